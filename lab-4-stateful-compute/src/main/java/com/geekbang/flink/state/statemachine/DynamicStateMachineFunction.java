@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.state.statemachine;
+
+import com.geekbang.flink.state.statemachine.dfa.StateMachineDefinition;
+import com.geekbang.flink.state.statemachine.dfa.TransitionTable;
+import com.geekbang.flink.state.statemachine.event.Alert;
+import com.geekbang.flink.state.statemachine.event.Event;
+import org.apache.flink.api.common.state.BroadcastState;
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ReadOnlyBroadcastState;
+import org.apache.flink.api.common.typeinfo.Types;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.functions.co.KeyedBroadcastProcessFunction;
+import org.apache.flink.util.Collector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Evaluates all state machines that were broadcast to the job against the events of one
+ * source address.
+ *
+ * <p>Definitions are compiled into {@link TransitionTable TransitionTables} when they arrive and
+ * are kept in broadcast state, together with a small integer id per machine. For every key, the
+ * current state of each machine is one byte in a map state keyed by machine id, so an event costs
+ * one table lookup and one state access per machine, and a state entry does not repeat the
+ * machine name. When a machine is deleted or its transitions change, its per-key state is dropped
+ * for all keys, so that the keys restart in the initial state of the new definition, and the id
+ * of a deleted machine is reused by the next new one.
+ */
+@SuppressWarnings("serial")
+public class DynamicStateMachineFunction extends KeyedBroadcastProcessFunction<Integer, Event, StateMachineDefinition, Alert> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DynamicStateMachineFunction.class);
+
+	/** The compiled state machines and their ids, by name. */
+	public static final MapStateDescriptor<String, Machine> MACHINES = new MapStateDescriptor<>(
+			"state-machines", Types.STRING, Types.GENERIC(Machine.class));
+
+	/** The state of each machine for the current key, by machine id. */
+	private static final MapStateDescriptor<Integer, Byte> STATES = new MapStateDescriptor<>(
+			"machine-states", Types.INT, Types.BYTE);
+
+	private transient MapState<Integer, Byte> currentStates;
+
+	@Override
+	public void open(Configuration parameters) {
+		currentStates = getRuntimeContext().getMapState(STATES);
+	}
+
+	@Override
+	public void processElement(Event evt, ReadOnlyContext ctx, Collector<Alert> out) throws Exception {
+		final ReadOnlyBroadcastState<String, Machine> machines = ctx.getBroadcastState(MACHINES);
+		final int eventType = evt.type().ordinal();
+
+		for (Map.Entry<String, Machine> entry : machines.immutableEntries()) {
+			final int id = entry.getValue().id;
+			final TransitionTable table = entry.getValue().table;
+
+			// if no state exists, yet, the state must be the state machine's initial state
+			final Byte stored = currentStates.get(id);
+			final int state = stored == null ? table.initialState() : stored & 0xff;
+			final int nextState = table.next(state, eventType);
+
+			if (nextState == TransitionTable.INVALID) {
+				out.collect(new Alert(evt.sourceAddress(), entry.getKey(), table.stateName(state), evt.type()));
+			}
+			else if (table.isTerminal(nextState)) {
+				if (stored != null) {
+					currentStates.remove(id);
+				}
+			}
+			else if (nextState != state || stored == null) {
+				currentStates.put(id, (byte) nextState);
+			}
+		}
+	}
+
+	@Override
+	public void processBroadcastElement(StateMachineDefinition definition, Context ctx, Collector<Alert> out) throws Exception {
+		final BroadcastState<String, Machine> machines = ctx.getBroadcastState(MACHINES);
+		final String name = definition.getName();
+		final Machine previous = machines.get(name);
+
+		if (definition.isDelete()) {
+			machines.remove(name);
+		}
+		else {
+			final TransitionTable table = definition.compile();
+			if (previous != null && table.equals(previous.table)) {
+				return;
+			}
+			// a replaced machine keeps its id, its entries are dropped below
+			machines.put(name, new Machine(previous != null ? previous.id : nextFreeId(machines), table));
+		}
+
+		if (previous != null) {
+			// the stored state ids refer to the previous definition
+			final int id = previous.id;
+			ctx.applyToKeyedState(STATES, (key, states) -> states.remove(id));
+		}
+		LOG.info("{} state machine {}", definition.isDelete() ? "Removed" : previous == null ? "Added" : "Replaced", name);
+	}
+
+	/**
+	 * Gets the smallest id that no machine uses. Every parallel instance sees the same broadcast
+	 * elements in the same order, so all instances assign the same ids.
+	 */
+	private static int nextFreeId(BroadcastState<String, Machine> machines) throws Exception {
+		final BitSet used = new BitSet();
+		for (Map.Entry<String, Machine> entry : machines.entries()) {
+			used.set(entry.getValue().id);
+		}
+		return used.nextClearBit(0);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A compiled state machine and the id that its per-key state is stored under.
+	 */
+	public static final class Machine implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		final int id;
+
+		final TransitionTable table;
+
+		Machine(int id, TransitionTable table) {
+			this.id = id;
+			this.table = table;
+		}
+	}
+}
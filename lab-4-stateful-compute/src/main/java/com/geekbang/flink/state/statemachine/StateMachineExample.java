@@ -19,23 +19,34 @@
 package com.geekbang.flink.state.statemachine;
 
 import com.geekbang.flink.state.statemachine.dfa.State;
+import com.geekbang.flink.state.statemachine.dfa.StateMachineDefinition;
+import com.geekbang.flink.state.statemachine.dfa.StateSerializer;
+import com.geekbang.flink.state.statemachine.dfa.TransitionTable;
 import com.geekbang.flink.state.statemachine.event.Alert;
 import com.geekbang.flink.state.statemachine.event.Event;
 import com.geekbang.flink.state.statemachine.kafka.EventDeSerializer;
 import com.geekbang.flink.state.statemachine.generator.EventsGeneratorSource;
+import org.apache.flink.api.common.functions.FlatMapFunction;
 import org.apache.flink.api.common.functions.RichFlatMapFunction;
+import org.apache.flink.api.common.serialization.SimpleStringSchema;
 import org.apache.flink.api.common.state.ValueState;
 import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.java.io.TextInputFormat;
 import org.apache.flink.api.java.utils.ParameterTool;
 import org.apache.flink.configuration.Configuration;
 import org.apache.flink.contrib.streaming.state.RocksDBStateBackend;
 import org.apache.flink.core.fs.FileSystem;
+import org.apache.flink.core.fs.Path;
 import org.apache.flink.runtime.state.filesystem.FsStateBackend;
+import org.apache.flink.streaming.api.datastream.BroadcastStream;
 import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.functions.source.FileProcessingMode;
 import org.apache.flink.streaming.api.functions.source.SourceFunction;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer010;
 import org.apache.flink.util.Collector;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Properties;
 
@@ -44,6 +55,11 @@ import java.util.Properties;
  * This class implements the streaming application that receives the stream of events and evaluates
  * a state machine (per originating address) to validate that the events follow
  * the state machine's rules.
+ *
+ * <p>By default the built-in {@link State} machine is evaluated. With {@code --definitions-file}
+ * or {@code --definitions-topic}, the job instead evaluates all state machines defined as JSON
+ * (see {@link StateMachineDefinition}), one definition per line or Kafka record. Definitions are
+ * broadcast to the job, so machines can be added, replaced or deleted while it runs.
  */
 public class StateMachineExample {
 
@@ -64,17 +80,18 @@ public class StateMachineExample {
 		System.out.println("\t[--async-checkpoints <true|false>]");
 		System.out.println("\t[--incremental-checkpoints <true|false>]");
 		System.out.println("\t[--output <filepath> OR null for stdout]");
+		System.out.println("\t[--definitions-file <filepath> [--definitions-interval <ms>] OR --definitions-topic <topic>]");
 		System.out.println();
 
 		// ---- determine whether to use the built-in source, or read from Kafka ----
 
 		final SourceFunction<Event> source;
 		final ParameterTool params = ParameterTool.fromArgs(args);
+		final String brokers = params.get("brokers", "localhost:9092");
 
 		if (params.has("kafka-topic")) {
 			// set up the Kafka reader
 			String kafkaTopic = params.get("kafka-topic");
-			String brokers = params.get("brokers", "localhost:9092");
 
 			System.out.printf("Reading from kafka topic %s @ %s\n", kafkaTopic, brokers);
 			System.out.println();
@@ -82,6 +99,8 @@ public class StateMachineExample {
 			Properties kafkaProps = new Properties();
 			kafkaProps.setProperty("bootstrap.servers", brokers);
 
+			// records are either single events or batches, the consumer emits all events of a
+			// record through EventDeSerializer#deserialize(byte[], Collector)
 			FlinkKafkaConsumer010<Event> kafka = new FlinkKafkaConsumer010<>(kafkaTopic, new EventDeSerializer(), kafkaProps);
 			kafka.setStartFromLatest();
 			kafka.setCommitOffsetsOnCheckpoints(false);
@@ -121,13 +140,56 @@ public class StateMachineExample {
 
 		DataStream<Event> events = env.addSource(source);
 
-		DataStream<Alert> alerts = events
+		final DataStream<String> definitionLines;
+		if (params.has("definitions-topic")) {
+			Properties kafkaProps = new Properties();
+			kafkaProps.setProperty("bootstrap.servers", brokers);
+
+			FlinkKafkaConsumer010<String> kafka = new FlinkKafkaConsumer010<>(
+					params.get("definitions-topic"), new SimpleStringSchema(), kafkaProps);
+			// all definitions are needed on a fresh start, after a restore they are in the broadcast state
+			kafka.setStartFromEarliest();
+			definitionLines = env.addSource(kafka).name("State machine definitions").setParallelism(1);
+		}
+		else if (params.has("definitions-file")) {
+			// the whole file is read again whenever it is modified; unchanged machines are ignored
+			final String definitionsFile = params.get("definitions-file");
+			definitionLines = env.readFile(
+					new TextInputFormat(new Path(definitionsFile)),
+					definitionsFile,
+					FileProcessingMode.PROCESS_CONTINUOUSLY,
+					params.getLong("definitions-interval", 10000L)).name("State machine definitions").setParallelism(1);
+		}
+		else {
+			definitionLines = null;
+		}
+
+		final DataStream<Alert> alerts;
+		if (definitionLines == null) {
+			alerts = events
 				// partition on the address to make sure equal addresses
 				// end up in the same state machine flatMap function
 				.keyBy(Event::sourceAddress)
 
 				// the function that evaluates the state machine over the sequence of events
 				.flatMap(new StateMachineMapper());
+		}
+		else {
+			// definitions are read and parsed on a single channel: broadcast elements from several
+			// upstream channels may interleave differently on every parallel instance, which could
+			// leave the instances with different versions of a replaced or deleted machine
+			BroadcastStream<StateMachineDefinition> definitions = definitionLines
+				.flatMap(new DefinitionParser())
+				.setParallelism(1)
+				.broadcast(DynamicStateMachineFunction.MACHINES);
+
+			alerts = events
+				.keyBy(Event::sourceAddress)
+				.connect(definitions)
+
+				// evaluates all broadcast state machines over the sequence of events
+				.process(new DynamicStateMachineFunction());
+		}
 
 		// output the alerts to std-out
 		if (outputFile == null) {
@@ -148,10 +210,17 @@ public class StateMachineExample {
 	 * The function that maintains the per-IP-address state machines and verifies that the
 	 * events are consistent with the current state of the state machine. If the event is not
 	 * consistent with the current state, the function produces an alert.
+	 *
+	 * <p>Transitions are looked up in the compiled {@link TransitionTable}, and the state is
+	 * stored as a single byte through the {@link StateSerializer}.
 	 */
 	@SuppressWarnings("serial")
 	static class StateMachineMapper extends RichFlatMapFunction<Event, Alert> {
 
+		private static final State[] STATES = State.values();
+
+		private static final TransitionTable TABLE = TransitionTable.STATES;
+
 		/** The state for the current key. */
 		private ValueState<State> currentState;
 
@@ -159,7 +228,7 @@ public class StateMachineExample {
 		public void open(Configuration conf) {
 			// get access to the state object
 			currentState = getRuntimeContext().getState(
-						new ValueStateDescriptor<>("state", State.class));
+						new ValueStateDescriptor<>("state", StateSerializer.INSTANCE));
 		}
 
 		@Override
@@ -167,26 +236,53 @@ public class StateMachineExample {
 			// get the current state for the key (source address)
 			// if no state exists, yet, the state must be the state machine's initial state
 			State state = currentState.value();
-			if (state == null) {
-				state = State.Initial;
-			}
+			int stateId = state == null ? TABLE.initialState() : state.ordinal();
 
-			// ask the state machine what state we should go to based on the given event
-			State nextState = state.transition(evt.type());
+			// look up what state we should go to based on the given event
+			int nextState = TABLE.next(stateId, evt.type().ordinal());
 
-			if (nextState == State.InvalidTransition) {
+			if (nextState == TransitionTable.INVALID) {
 				// the current event resulted in an invalid transition
 				// raise an alert!
-				out.collect(new Alert(evt.sourceAddress(), state, evt.type()));
+				out.collect(new Alert(evt.sourceAddress(), STATES[stateId], evt.type()));
 			}
-			else if (nextState.isTerminal()) {
+			else if (TABLE.isTerminal(nextState)) {
 				// we reached a terminal state, clean up the current state
 				currentState.clear();
 			}
-			else {
+			else if (nextState != stateId) {
 				// remember the new state
-				currentState.update(nextState);
+				currentState.update(STATES[nextState]);
+			}
+		}
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Parses one JSON state machine definition per line. Invalid definitions are logged and
+	 * dropped, so that they never reach the running state machines.
+	 */
+	@SuppressWarnings("serial")
+	static class DefinitionParser implements FlatMapFunction<String, StateMachineDefinition> {
+
+		private static final Logger LOG = LoggerFactory.getLogger(DefinitionParser.class);
+
+		@Override
+		public void flatMap(String line, Collector<StateMachineDefinition> out) {
+			if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+				return;
+			}
+			final StateMachineDefinition definition;
+			try {
+				definition = StateMachineDefinition.parse(line);
+			}
+			catch (RuntimeException e) {
+				// also catches what validation missed, a bad line must never fail the job
+				LOG.warn("Ignoring invalid state machine definition", e);
+				return;
 			}
+			out.collect(definition);
 		}
 	}
 }
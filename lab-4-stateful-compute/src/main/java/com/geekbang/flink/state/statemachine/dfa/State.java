@@ -78,6 +78,8 @@ public enum State {
 
 	// ------------------------------------------------------------------------
 
+	private static final State[] VALUES = values();
+
 	private final Transition[] transitions;
 
 	State(Transition... transitions) {
@@ -92,25 +94,24 @@ public enum State {
 		return transitions.length == 0;
 	}
 
+	Transition[] transitions() {
+		return transitions;
+	}
+
 	// ------------------------------------------------------------------------
 
 	/**
 	 * Gets the state after transitioning from this state based on the given event.
 	 * If the transition is valid, this returns the new state, and if this transition
-	 * is illegal, it returns [[InvalidTransition]].
+	 * is illegal, it returns [[InvalidTransition]]. The lookup goes through the compiled
+	 * {@link TransitionTable#STATES}.
 	 *
 	 * @param evt The event that defined the transition.
 	 * @return The new state, or [[InvalidTransition]].
 	 */
 	public State transition(EventType evt) {
-		for (Transition t : transitions) {
-			if (t.eventType() == evt) {
-				return t.targetState();
-			}
-		}
-
-		// no transition found
-		return InvalidTransition;
+		final int next = TransitionTable.STATES.next(ordinal(), evt.ordinal());
+		return next == TransitionTable.INVALID ? InvalidTransition : VALUES[next];
 	}
 
 	/**
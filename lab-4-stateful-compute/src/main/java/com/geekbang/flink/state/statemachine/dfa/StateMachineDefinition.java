@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.state.statemachine.dfa;
+
+import com.alibaba.fastjson.JSON;
+import com.geekbang.flink.state.statemachine.event.EventType;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A state machine defined at runtime, for example as one line of JSON:
+ * <pre>
+ * {"name": "ab", "initial": "Initial", "states": [
+ *   {"name": "Initial", "transitions": [{"event": "a", "target": "W"}]},
+ *   {"name": "W", "transitions": [{"event": "b", "target": "Terminal"}]},
+ *   {"name": "Terminal"}]}
+ * </pre>
+ *
+ * <p>States without transitions are terminal. Events are the names of the {@link EventType}
+ * constants. A definition with {@code "delete": true} and only a name removes the machine.
+ */
+public class StateMachineDefinition implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	private String name;
+
+	private String initial;
+
+	private List<StateDefinition> states = new ArrayList<>();
+
+	private boolean delete;
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Parses a definition from JSON.
+	 *
+	 * @throws IllegalArgumentException If the JSON is malformed or the definition is invalid.
+	 */
+	public static StateMachineDefinition parse(String json) {
+		final StateMachineDefinition definition;
+		try {
+			definition = JSON.parseObject(json, StateMachineDefinition.class);
+		} catch (RuntimeException e) {
+			throw new IllegalArgumentException("Malformed state machine definition: " + json, e);
+		}
+		if (definition == null || definition.name == null || definition.name.isEmpty()) {
+			throw new IllegalArgumentException("State machine definition without a name: " + json);
+		}
+		if (!definition.delete) {
+			// fail on the invalid definition here, rather than in every parallel instance
+			definition.compile();
+		}
+		return definition;
+	}
+
+	/**
+	 * Compiles this definition into a transition table. State ids are the positions of the
+	 * states in the definition.
+	 *
+	 * @throws IllegalArgumentException If the definition is invalid.
+	 */
+	public TransitionTable compile() {
+		final Map<String, Integer> ids = new HashMap<>();
+		for (StateDefinition state : states) {
+			if (state == null) {
+				throw new IllegalArgumentException("Null state in " + name);
+			}
+			if (state.getName() == null || ids.put(state.getName(), ids.size()) != null) {
+				throw new IllegalArgumentException("Missing or duplicate state name '" + state.getName() + "' in " + name);
+			}
+		}
+		final Integer initialId = ids.get(initial);
+		if (initialId == null) {
+			throw new IllegalArgumentException("Unknown initial state '" + initial + "' in " + name);
+		}
+
+		final String[] names = new String[states.size()];
+		final boolean[] terminal = new boolean[states.size()];
+		final int[][] table = new int[states.size()][EventType.values().length];
+		for (int i = 0; i < states.size(); i++) {
+			final StateDefinition state = states.get(i);
+			names[i] = state.getName();
+			terminal[i] = state.getTransitions().isEmpty();
+			Arrays.fill(table[i], TransitionTable.INVALID);
+			for (TransitionDefinition transition : state.getTransitions()) {
+				if (transition == null) {
+					throw new IllegalArgumentException("Null transition from " + state.getName() + " in " + name);
+				}
+				final Integer target = ids.get(transition.getTarget());
+				if (target == null) {
+					throw new IllegalArgumentException("Unknown target state '" + transition.getTarget() + "' in " + name);
+				}
+				final int event;
+				try {
+					event = EventType.valueOf(transition.getEvent()).ordinal();
+				} catch (RuntimeException e) {
+					throw new IllegalArgumentException("Unknown event '" + transition.getEvent() + "' in " + name, e);
+				}
+				if (table[i][event] != TransitionTable.INVALID) {
+					throw new IllegalArgumentException(
+							"Ambiguous transitions on '" + transition.getEvent() + "' from " + state.getName() + " in " + name);
+				}
+				table[i][event] = target;
+			}
+		}
+		return new TransitionTable(names, initialId, terminal, table);
+	}
+
+	// ------------------------------------------------------------------------
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getInitial() {
+		return initial;
+	}
+
+	public void setInitial(String initial) {
+		this.initial = initial;
+	}
+
+	public List<StateDefinition> getStates() {
+		return states;
+	}
+
+	public void setStates(List<StateDefinition> states) {
+		this.states = states == null ? new ArrayList<>() : states;
+	}
+
+	public boolean isDelete() {
+		return delete;
+	}
+
+	public void setDelete(boolean delete) {
+		this.delete = delete;
+	}
+
+	@Override
+	public String toString() {
+		return delete ? "delete " + name : name + " (" + states.size() + " states)";
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * A state and its outgoing transitions.
+	 */
+	public static class StateDefinition implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private String name;
+
+		private List<TransitionDefinition> transitions = new ArrayList<>();
+
+		public String getName() {
+			return name;
+		}
+
+		public void setName(String name) {
+			this.name = name;
+		}
+
+		public List<TransitionDefinition> getTransitions() {
+			return transitions;
+		}
+
+		public void setTransitions(List<TransitionDefinition> transitions) {
+			this.transitions = transitions == null ? new ArrayList<>() : transitions;
+		}
+	}
+
+	/**
+	 * A transition on an event into a target state.
+	 */
+	public static class TransitionDefinition implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private String event;
+
+		private String target;
+
+		public String getEvent() {
+			return event;
+		}
+
+		public void setEvent(String event) {
+			this.event = event;
+		}
+
+		public String getTarget() {
+			return target;
+		}
+
+		public void setTarget(String target) {
+			this.target = target;
+		}
+	}
+}
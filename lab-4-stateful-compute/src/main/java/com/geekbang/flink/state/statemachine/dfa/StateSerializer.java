@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.state.statemachine.dfa;
+
+import org.apache.flink.api.common.typeutils.SimpleTypeSerializerSnapshot;
+import org.apache.flink.api.common.typeutils.base.TypeSerializerSingleton;
+import org.apache.flink.core.memory.DataInputView;
+import org.apache.flink.core.memory.DataOutputView;
+
+import java.io.IOException;
+
+/**
+ * Serializes a {@link State} as a single byte holding its ordinal, which is also its id in
+ * {@link TransitionTable#STATES}. The generic enum serialization writes a four byte ordinal
+ * and goes through generic type information.
+ *
+ * <p>Because the ordinal is stored, states may only be appended to the enum, not reordered.
+ */
+public final class StateSerializer extends TypeSerializerSingleton<State> {
+
+	private static final long serialVersionUID = 1L;
+
+	public static final StateSerializer INSTANCE = new StateSerializer();
+
+	private static final State[] STATES = State.values();
+
+	@Override
+	public boolean isImmutableType() {
+		return true;
+	}
+
+	@Override
+	public State createInstance() {
+		return State.Initial;
+	}
+
+	@Override
+	public State copy(State from) {
+		return from;
+	}
+
+	@Override
+	public State copy(State from, State reuse) {
+		return from;
+	}
+
+	@Override
+	public int getLength() {
+		return 1;
+	}
+
+	@Override
+	public void serialize(State record, DataOutputView target) throws IOException {
+		target.writeByte(record.ordinal());
+	}
+
+	@Override
+	public State deserialize(DataInputView source) throws IOException {
+		return STATES[source.readUnsignedByte()];
+	}
+
+	@Override
+	public State deserialize(State reuse, DataInputView source) throws IOException {
+		return deserialize(source);
+	}
+
+	@Override
+	public void copy(DataInputView source, DataOutputView target) throws IOException {
+		target.writeByte(source.readUnsignedByte());
+	}
+
+	@Override
+	public Snapshot snapshotConfiguration() {
+		return new Snapshot();
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Snapshot for the {@link StateSerializer}.
+	 */
+	public static final class Snapshot extends SimpleTypeSerializerSnapshot<State> {
+		public Snapshot() {
+			super(() -> INSTANCE);
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.state.statemachine.dfa;
+
+import com.geekbang.flink.state.statemachine.event.EventType;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import static org.apache.flink.util.Preconditions.checkArgument;
+
+/**
+ * A state machine compiled into a dense transition table, indexed by state id and event type
+ * ordinal. Evaluating a transition is a single array lookup instead of a scan over the
+ * transitions of the current state.
+ *
+ * <p>State ids fit into one unsigned byte, so a state can be stored in one byte of keyed state
+ * (see {@link StateSerializer}).
+ */
+public final class TransitionTable implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/** Maximum number of states, so that every state id fits into one unsigned byte. */
+	public static final int MAX_STATES = 256;
+
+	/** Target of transitions that are not allowed from a state. */
+	public static final int INVALID = -1;
+
+	/** The table compiled from the {@link State} enum; state ids are the enum ordinals. */
+	public static final TransitionTable STATES = compile(State.values(), State.Initial);
+
+	private final String[] stateNames;
+
+	private final int initialState;
+
+	private final boolean[] terminal;
+
+	/** table[state][eventType] is the target state id, or {@link #INVALID}. */
+	private final int[][] table;
+
+	/**
+	 * Creates a new transition table.
+	 *
+	 * @param stateNames The name of each state, indexed by state id.
+	 * @param initialState The id of the state that every sequence starts in.
+	 * @param terminal Whether a state is terminal, indexed by state id.
+	 * @param table The target state id for each state id and event type, or {@link #INVALID}.
+	 */
+	public TransitionTable(String[] stateNames, int initialState, boolean[] terminal, int[][] table) {
+		checkArgument(stateNames.length <= MAX_STATES, "At most %s states are supported", MAX_STATES);
+		checkArgument(terminal.length == stateNames.length && table.length == stateNames.length,
+				"Terminal flags and transitions must be given for each state");
+		checkArgument(initialState >= 0 && initialState < stateNames.length, "Invalid initial state %s", initialState);
+		for (int[] row : table) {
+			for (int target : row) {
+				checkArgument(target == INVALID || (target >= 0 && target < stateNames.length),
+						"Invalid target state %s", target);
+			}
+		}
+		this.stateNames = stateNames;
+		this.initialState = initialState;
+		this.terminal = terminal;
+		this.table = table;
+	}
+
+	/**
+	 * Compiles the transitions of the given states. The id of a state is its position in the array.
+	 */
+	public static TransitionTable compile(State[] states, State initial) {
+		final int numEventTypes = EventType.values().length;
+		final String[] names = new String[states.length];
+		final boolean[] terminal = new boolean[states.length];
+		final int[][] table = new int[states.length][numEventTypes];
+
+		for (int i = 0; i < states.length; i++) {
+			names[i] = states[i].name();
+			terminal[i] = states[i].isTerminal();
+			Arrays.fill(table[i], INVALID);
+			for (Transition t : states[i].transitions()) {
+				table[i][t.eventType().ordinal()] = Arrays.asList(states).indexOf(t.targetState());
+			}
+		}
+		return new TransitionTable(names, Arrays.asList(states).indexOf(initial), terminal, table);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Gets the id of the state after the given event, or {@link #INVALID} if the event is not
+	 * allowed in the given state.
+	 */
+	public int next(int state, int eventType) {
+		return table[state][eventType];
+	}
+
+	public int initialState() {
+		return initialState;
+	}
+
+	public boolean isTerminal(int state) {
+		return terminal[state];
+	}
+
+	public int numStates() {
+		return stateNames.length;
+	}
+
+	public String stateName(int state) {
+		return stateNames[state];
+	}
+
+	// ------------------------------------------------------------------------
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		else if (obj == null || getClass() != obj.getClass()) {
+			return false;
+		}
+		else {
+			final TransitionTable that = (TransitionTable) obj;
+			return this.initialState == that.initialState &&
+					Arrays.equals(this.stateNames, that.stateNames) &&
+					Arrays.equals(this.terminal, that.terminal) &&
+					Arrays.deepEquals(this.table, that.table);
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(stateNames) + Arrays.deepHashCode(table);
+	}
+}
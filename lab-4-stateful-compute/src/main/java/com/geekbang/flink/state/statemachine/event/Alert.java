@@ -30,7 +30,10 @@ public class Alert {
 
 	private final int address;
 
-	private final State state;
+	/** The name of the state machine, or null for the built-in {@link State} machine. */
+	private final String machine;
+
+	private final String state;
 
 	private final EventType transition;
 
@@ -42,7 +45,20 @@ public class Alert {
 	 * @param transition The transition that was considered invalid.
 	 */
 	public Alert(int address, State state, EventType transition) {
+		this(address, null, state.name(), transition);
+	}
+
+	/**
+	 * Creates a new alert for a state machine that was defined at runtime.
+	 *
+	 * @param address The originating address (think 32 bit IPv4 address).
+	 * @param machine The name of the state machine.
+	 * @param state The name of the state that the event state machine found.
+	 * @param transition The transition that was considered invalid.
+	 */
+	public Alert(int address, String machine, String state, EventType transition) {
 		this.address = address;
+		this.machine = machine;
 		this.state = checkNotNull(state);
 		this.transition = checkNotNull(transition);
 	}
@@ -53,7 +69,11 @@ public class Alert {
 		return address;
 	}
 
-	public State state() {
+	public String machine() {
+		return machine;
+	}
+
+	public String state() {
 		return state;
 	}
 
@@ -65,7 +85,7 @@ public class Alert {
 
 	@Override
 	public int hashCode() {
-		int code = 31 * address + state.hashCode();
+		int code = 31 * address + state.hashCode() + (machine == null ? 0 : 961 * machine.hashCode());
 		return 31 * code + transition.hashCode();
 	}
 
@@ -81,12 +101,13 @@ public class Alert {
 			final Alert that = (Alert) obj;
 			return this.address == that.address &&
 					this.transition == that.transition &&
-					this.state == that.state;
+					this.state.equals(that.state) &&
+					(this.machine == null ? that.machine == null : this.machine.equals(that.machine));
 		}
 	}
 
 	@Override
 	public String toString() {
-		return "ALERT " + Event.formatAddress(address) + " : " + state.name() + " -> " + transition.name();
+		return "ALERT " + Event.formatAddress(address) + " : " + (machine == null ? "" : machine + "/") + state + " -> " + transition.name();
 	}
 }
@@ -112,6 +112,11 @@ public class StandaloneThreadedGenerator {
 				Thread.currentThread().interrupt();
 			}
 		}
+
+		// flush what the collectors still buffer
+		for (Collector<Event> collector : collectors) {
+			collector.close();
+		}
 	}
 
 	// ------------------------------------------------------------------------
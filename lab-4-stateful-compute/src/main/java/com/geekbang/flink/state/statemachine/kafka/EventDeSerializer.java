@@ -23,32 +23,65 @@ import com.geekbang.flink.state.statemachine.event.EventType;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.api.common.serialization.SerializationSchema;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.util.Collector;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
+import java.util.Arrays;
 
 /**
  * A serializer and deserializer for the {@link Event} type.
+ *
+ * <p>A single event is 8 bytes: the source address and the event type ordinal, both as little
+ * endian ints. A batch packs many events into one record: the number of events as a little endian
+ * int, followed by that many 8 byte events (see {@link BatchWriter}). Since a batch is always
+ * 4 bytes longer than a multiple of 8, both formats can be read from the same topic.
  */
 public class EventDeSerializer implements DeserializationSchema<Event>, SerializationSchema<Event> {
 
 	private static final long serialVersionUID = 1L;
 
+	/** The size of one serialized event. */
+	public static final int EVENT_SIZE = 8;
+
+	/** The size of the event count in front of a batch. */
+	public static final int BATCH_HEADER_SIZE = 4;
+
+	private static final EventType[] TYPES = EventType.values();
+
 	@Override
 	public byte[] serialize(Event evt) {
-		ByteBuffer byteBuffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
-		byteBuffer.putInt(0, evt.sourceAddress());
-		byteBuffer.putInt(4, evt.type().ordinal());
-		return byteBuffer.array();
+		byte[] bytes = new byte[EVENT_SIZE];
+		writeEvent(bytes, 0, evt);
+		return bytes;
 	}
 
 	@Override
 	public Event deserialize(byte[] message) throws IOException {
-		ByteBuffer buffer = ByteBuffer.wrap(message).order(ByteOrder.LITTLE_ENDIAN);
-		int address = buffer.getInt(0);
-		int typeOrdinal = buffer.getInt(4);
-		return new Event(EventType.values()[typeOrdinal], address);
+		if (message.length != EVENT_SIZE) {
+			throw new IOException("Expected a single event of " + EVENT_SIZE + " bytes, but got " + message.length
+					+ " bytes; batches must be read through deserialize(byte[], Collector)");
+		}
+		return readEvent(message, 0);
+	}
+
+	/**
+	 * Emits all events of a record, either a single event or a batch. Events are read straight
+	 * from the record bytes.
+	 */
+	@Override
+	public void deserialize(byte[] message, Collector<Event> out) throws IOException {
+		if (message.length == EVENT_SIZE) {
+			out.collect(readEvent(message, 0));
+			return;
+		}
+
+		final int count = message.length >= BATCH_HEADER_SIZE ? readInt(message, 0) : -1;
+		if (count < 0 || message.length != BATCH_HEADER_SIZE + count * EVENT_SIZE) {
+			throw new IOException("Corrupt event batch of " + message.length + " bytes");
+		}
+		for (int offset = BATCH_HEADER_SIZE; offset < message.length; offset += EVENT_SIZE) {
+			out.collect(readEvent(message, offset));
+		}
 	}
 
 	@Override
@@ -60,4 +93,86 @@ public class EventDeSerializer implements DeserializationSchema<Event>, Serializ
 	public TypeInformation<Event> getProducedType() {
 		return TypeInformation.of(Event.class);
 	}
+
+	// ------------------------------------------------------------------------
+
+	private static Event readEvent(byte[] bytes, int offset) throws IOException {
+		final int address = readInt(bytes, offset);
+		final int typeOrdinal = readInt(bytes, offset + 4);
+		if (typeOrdinal < 0 || typeOrdinal >= TYPES.length) {
+			throw new IOException("Invalid event type " + typeOrdinal);
+		}
+		return new Event(TYPES[typeOrdinal], address);
+	}
+
+	private static void writeEvent(byte[] bytes, int offset, Event evt) {
+		writeInt(bytes, offset, evt.sourceAddress());
+		writeInt(bytes, offset + 4, evt.type().ordinal());
+	}
+
+	private static int readInt(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff)
+				| (bytes[offset + 1] & 0xff) << 8
+				| (bytes[offset + 2] & 0xff) << 16
+				| (bytes[offset + 3] & 0xff) << 24;
+	}
+
+	private static void writeInt(byte[] bytes, int offset, int value) {
+		bytes[offset] = (byte) value;
+		bytes[offset + 1] = (byte) (value >>> 8);
+		bytes[offset + 2] = (byte) (value >>> 16);
+		bytes[offset + 3] = (byte) (value >>> 24);
+	}
+
+	// ------------------------------------------------------------------------
+
+	/**
+	 * Packs events into batch records. Events are written into one reusable buffer, and a record
+	 * is only copied out of it when the batch is complete.
+	 */
+	public static class BatchWriter {
+
+		private final byte[] buffer;
+
+		private int count;
+
+		/**
+		 * Creates a writer for batches of at most the given number of events.
+		 */
+		public BatchWriter(int maxEvents) {
+			if (maxEvents <= 0) {
+				throw new IllegalArgumentException("Batch size must be positive: " + maxEvents);
+			}
+			this.buffer = new byte[BATCH_HEADER_SIZE + maxEvents * EVENT_SIZE];
+		}
+
+		/**
+		 * Adds an event to the current batch.
+		 *
+		 * @return True, if the batch is full and should be taken with {@link #takeBatch()}.
+		 */
+		public boolean add(Event evt) {
+			writeEvent(buffer, BATCH_HEADER_SIZE + count * EVENT_SIZE, evt);
+			count++;
+			return isFull();
+		}
+
+		public boolean isFull() {
+			return BATCH_HEADER_SIZE + count * EVENT_SIZE == buffer.length;
+		}
+
+		public boolean isEmpty() {
+			return count == 0;
+		}
+
+		/**
+		 * Returns the current batch as a record and starts a new batch.
+		 */
+		public byte[] takeBatch() {
+			writeInt(buffer, 0, count);
+			final byte[] batch = Arrays.copyOf(buffer, BATCH_HEADER_SIZE + count * EVENT_SIZE);
+			count = 0;
+			return batch;
+		}
+	}
 }
@@ -27,11 +27,19 @@ import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.common.serialization.ByteArraySerializer;
 
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import static org.apache.flink.util.Preconditions.checkNotNull;
 
 /**
  * A generator that pushes the data into Kafka.
+ *
+ * <p>Events are packed into batch records of up to {@link #BATCH_SIZE} events (see
+ * {@link EventDeSerializer.BatchWriter}), so the per-record overhead of Kafka is paid once per
+ * batch instead of once per 8 byte event. A timer sends a partial batch once its first event is
+ * {@link #MAX_BATCH_DELAY_MS} old, also when no further events arrive.
  */
 public class KafkaStandaloneGenerator extends StandaloneThreadedGenerator {
 
@@ -41,6 +49,12 @@ public class KafkaStandaloneGenerator extends StandaloneThreadedGenerator {
 
 	public static final int NUM_PARTITIONS = 1;
 
+	public static final int BATCH_SIZE = 1024;
+
+	public static final long MAX_BATCH_DELAY_MS = 100L;
+
+	private static final long FLUSH_CHECK_INTERVAL_MS = 10L;
+
 	/**
 	 * Entry point to the kafka data producer.
 	 */
@@ -62,33 +76,65 @@ public class KafkaStandaloneGenerator extends StandaloneThreadedGenerator {
 
 		private final KafkaProducer<Object, byte[]> producer;
 
-		private final EventDeSerializer serializer;
+		private final EventDeSerializer.BatchWriter batch;
+
+		private final ScheduledExecutorService flusher;
 
 		private final String topic;
 
 		private final int partition;
 
+		private long batchStart;
+
 		KafkaCollector(String brokerAddress, String topic, int partition) {
 			this.topic = checkNotNull(topic);
 			this.partition = partition;
-			this.serializer = new EventDeSerializer();
+			this.batch = new EventDeSerializer.BatchWriter(BATCH_SIZE);
 
 			// create Kafka producer
 			Properties properties = new Properties();
 			properties.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, brokerAddress);
+			properties.put(ProducerConfig.LINGER_MS_CONFIG, "5");
+			properties.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, "lz4");
 			properties.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getCanonicalName());
 			properties.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getCanonicalName());
 			this.producer = new KafkaProducer<>(properties);
+
+			this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "kafka-batch-flusher-" + partition);
+				thread.setDaemon(true);
+				return thread;
+			});
+			flusher.scheduleAtFixedRate(this::flushIfDue,
+					FLUSH_CHECK_INTERVAL_MS, FLUSH_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
 		}
 
 		@Override
-		public void collect(Event evt) {
-			byte[] serialized = serializer.serialize(evt);
-			producer.send(new ProducerRecord<>(topic, partition, null, serialized));
+		public synchronized void collect(Event evt) {
+			if (batch.isEmpty()) {
+				batchStart = System.currentTimeMillis();
+			}
+			if (batch.add(evt)) {
+				flush();
+			}
+		}
+
+		private synchronized void flushIfDue() {
+			if (!batch.isEmpty() && System.currentTimeMillis() - batchStart >= MAX_BATCH_DELAY_MS) {
+				flush();
+			}
+		}
+
+		private synchronized void flush() {
+			if (!batch.isEmpty()) {
+				producer.send(new ProducerRecord<>(topic, partition, null, batch.takeBatch()));
+			}
 		}
 
 		@Override
 		public void close() {
+			flusher.shutdownNow();
+			flush();
 			producer.close();
 		}
 	}
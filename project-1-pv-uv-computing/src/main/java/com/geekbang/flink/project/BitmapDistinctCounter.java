@@ -0,0 +1,63 @@
+package com.geekbang.flink.project;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.KryoSerializable;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 基于 Roaring 压缩位图的精确去重
+ *
+ * <p>userId 按高 16 位分块, 每块按密度使用数组, 位图或游程编码, 稠密的 userId 每个只占 1~2 字节,
+ * 合并是逐块的或运算. 状态里序列化为 Roaring 的标准格式 (先做游程压缩), 前面加上字节长度,
+ * 而不是按字段序列化内部结构.
+ */
+public class BitmapDistinctCounter implements DistinctCounter, KryoSerializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private RoaringBitmap userIds = new RoaringBitmap();
+
+    @Override
+    public void add(int userId) {
+        userIds.add(userId);
+    }
+
+    @Override
+    public void merge(DistinctCounter other) {
+        userIds.or(((BitmapDistinctCounter) other).userIds);
+    }
+
+    @Override
+    public long cardinality() {
+        return userIds.getLongCardinality();
+    }
+
+    @Override
+    public void write(Kryo kryo, Output output) {
+        userIds.runOptimize();
+        output.writeInt(userIds.serializedSizeInBytes());
+        try {
+            userIds.serialize(new DataOutputStream(output));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void read(Kryo kryo, Input input) {
+        byte[] bytes = input.readBytes(input.readInt());
+        userIds = new RoaringBitmap();
+        try {
+            userIds.deserialize(ByteBuffer.wrap(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
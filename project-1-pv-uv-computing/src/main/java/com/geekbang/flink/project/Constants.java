@@ -24,6 +24,11 @@ public class Constants {
 
     public static final String TOTAL_SCENE_ID = "total";
 
+    public static final String UNKNOWN_SCENE_ID = "unknown";
+
+    // 与保留标识相同的真实取值加上这个前缀输出, 例如类目 total 输出为 ~total
+    public static final String SCENE_ESCAPE_PREFIX = "~";
+
     public static final String WS_URL = "ws://localhost:8081/ws";
 
     public static final String MAIN_CLASS = "com._4paradigm.cess.job.recall.Main";
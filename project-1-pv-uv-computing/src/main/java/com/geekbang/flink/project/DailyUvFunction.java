@@ -0,0 +1,155 @@
+package com.geekbang.flink.project;
+
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.streaming.api.TimerService;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static com.geekbang.flink.project.Constants.TOTAL_SCENE_ID;
+
+/**
+ * 当天累计 PV/UV, 每隔 fireInterval 提前输出一次
+ *
+ * <p>事件先写入 fireInterval 大小的分片 (pane), 分片结束时把分片并入当天的累计结构后删除,
+ * 并输出该分桶当天的累计结果. 每个事件只读写一个小分片, 当天的累计结构每个分片只读写一次,
+ * 不会为每条事件反序列化整天的位图.
+ *
+ * <p>一天按时区 zone 的规则划分, 夏令时切换的日子长 23 或 25 小时. 分片从每天的零点开始对齐,
+ * 每天最后一个分片可能较短, 不会跨天. 当天的累计结构在一天结束 allowedLateness 毫秒后清理,
+ * 之后到达的事件被丢弃并计入 lateEventsDropped 指标.
+ */
+public class DailyUvFunction extends KeyedProcessFunction<Integer, UserBehaviorEvent, PvUvPartial> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean eventTime;
+    private final long fireInterval;
+    private final ZoneId zone;
+    private final long allowedLateness;
+    private final DistinctCounter.Mode uvMode;
+    private final int hllPrecision;
+
+    private transient MapState<Long, PvUvAccumulator> panes;
+    private transient MapState<Long, PvUvAccumulator> days;
+    private transient Counter lateEventsDropped;
+
+    // 最近一次计算的自然日 [cachedDayStart, cachedDayEnd), 大多数事件落在同一天
+    private transient long cachedDayStart;
+    private transient long cachedDayEnd;
+
+    public DailyUvFunction(boolean eventTime, long fireInterval, ZoneId zone, long allowedLateness,
+                           DistinctCounter.Mode uvMode, int hllPrecision) {
+        if (fireInterval <= 0) {
+            throw new IllegalArgumentException("Fire interval " + fireInterval + " must be positive");
+        }
+        this.eventTime = eventTime;
+        this.fireInterval = fireInterval;
+        this.zone = zone;
+        this.allowedLateness = eventTime ? allowedLateness : 0L;
+        this.uvMode = uvMode;
+        this.hllPrecision = hllPrecision;
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        panes = getRuntimeContext().getMapState(
+                new MapStateDescriptor<>("panes", TypeInformation.of(Long.class), TypeInformation.of(PvUvAccumulator.class)));
+        days = getRuntimeContext().getMapState(
+                new MapStateDescriptor<>("days", TypeInformation.of(Long.class), TypeInformation.of(PvUvAccumulator.class)));
+        lateEventsDropped = getRuntimeContext().getMetricGroup().counter("lateEventsDropped");
+        cachedDayStart = 0L;
+        cachedDayEnd = 0L;
+    }
+
+    @Override
+    public void processElement(UserBehaviorEvent event, Context ctx, Collector<PvUvPartial> out) throws Exception {
+        TimerService timerService = ctx.timerService();
+        long time = eventTime ? ctx.timestamp() : timerService.currentProcessingTime();
+        long dayStart = dayStart(time);
+        if (eventTime && cachedDayEnd + allowedLateness <= timerService.currentWatermark()) {
+            lateEventsDropped.inc();
+            return;
+        }
+        long paneStart = time - (time - dayStart) % fireInterval;
+        PvUvAccumulator pane = panes.get(paneStart);
+        if (pane == null) {
+            pane = new PvUvAccumulator(0L, uvMode.create(hllPrecision));
+            // 迟到事件的分片已经结束, 定时器在下一个 watermark 到达时触发
+            registerTimer(timerService, Math.min(paneStart + fireInterval, cachedDayEnd));
+        }
+        pane.add(event);
+        panes.put(paneStart, pane);
+    }
+
+    private void registerTimer(TimerService timerService, long time) {
+        if (eventTime) {
+            timerService.registerEventTimeTimer(time);
+        } else {
+            timerService.registerProcessingTimeTimer(time);
+        }
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<PvUvPartial> out) throws Exception {
+        // 把已经结束的分片并入当天的累计结构, 每天只输出一次
+        Map<Long, PvUvAccumulator> updated = new TreeMap<>();
+        Iterator<Map.Entry<Long, PvUvAccumulator>> iterator = panes.iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, PvUvAccumulator> pane = iterator.next();
+            long dayStart = dayStart(pane.getKey());
+            if (Math.min(pane.getKey() + fireInterval, cachedDayEnd) > timestamp) {
+                continue;
+            }
+            PvUvAccumulator day = updated.get(dayStart);
+            if (day == null) {
+                day = days.get(dayStart);
+                if (day == null) {
+                    day = new PvUvAccumulator(0L, uvMode.create(hllPrecision));
+                    registerTimer(ctx.timerService(), cachedDayEnd + allowedLateness);
+                }
+                updated.put(dayStart, day);
+            }
+            day.merge(pane.getValue());
+            iterator.remove();
+        }
+        for (Map.Entry<Long, PvUvAccumulator> day : updated.entrySet()) {
+            long dayStart = day.getKey();
+            days.put(dayStart, day.getValue());
+            out.collect(new PvUvPartial(ctx.getCurrentKey(), dayStart, dayEnd(dayStart),
+                    day.getValue().getPv(), day.getValue().getUsers().cardinality(), TOTAL_SCENE_ID, TOTAL_SCENE_ID));
+        }
+
+        Iterator<Long> dayStarts = days.keys().iterator();
+        while (dayStarts.hasNext()) {
+            if (dayEnd(dayStarts.next()) + allowedLateness <= timestamp) {
+                dayStarts.remove();
+            }
+        }
+    }
+
+    /** time 所在自然日的零点, 同时把这一天缓存到 cachedDayStart/cachedDayEnd */
+    private long dayStart(long time) {
+        if (time < cachedDayStart || time >= cachedDayEnd) {
+            LocalDate date = Instant.ofEpochMilli(time).atZone(zone).toLocalDate();
+            cachedDayStart = date.atStartOfDay(zone).toInstant().toEpochMilli();
+            cachedDayEnd = date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli();
+        }
+        return cachedDayStart;
+    }
+
+    private long dayEnd(long dayStart) {
+        dayStart(dayStart);
+        return cachedDayEnd;
+    }
+}
@@ -0,0 +1,78 @@
+package com.geekbang.flink.project;
+
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.TimerService;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+import static com.geekbang.flink.project.Constants.TOTAL_SCENE_ID;
+
+/**
+ * 按天合并各个用户分桶的累计 PV/UV
+ *
+ * <p>每个桶只保留最新的累计结果. 事件时间模式下, 同一个 watermark 带来的各个桶的更新在下一个 watermark
+ * 合并输出一次; 处理时间模式下在 mergeDelay 对齐的时间点合并输出. 合并状态在一天结束 retention 毫秒后清理,
+ * 清理前会先输出尚未输出的更新.
+ */
+public class DailyUvMergeFunction extends KeyedProcessFunction<Long, PvUvPartial, PvUvResult> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean eventTime;
+    private final long mergeDelay;
+    private final long retention;
+
+    private transient MapState<Integer, PvUvPartial> partials;
+    private transient ValueState<Boolean> dirty;
+
+    public DailyUvMergeFunction(boolean eventTime, long mergeDelay, long retention) {
+        this.eventTime = eventTime;
+        this.mergeDelay = Math.max(mergeDelay, 1L);
+        this.retention = retention;
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        partials = getRuntimeContext().getMapState(
+                new MapStateDescriptor<>("partials", Integer.class, PvUvPartial.class));
+        dirty = getRuntimeContext().getState(new ValueStateDescriptor<>("dirty", Boolean.class));
+    }
+
+    @Override
+    public void processElement(PvUvPartial partial, Context ctx, Collector<PvUvResult> out) throws Exception {
+        partials.put(partial.getBucket(), partial);
+        dirty.update(true);
+        TimerService timerService = ctx.timerService();
+        if (eventTime) {
+            timerService.registerEventTimeTimer(timerService.currentWatermark() + 1);
+            timerService.registerEventTimeTimer(partial.getWindowEnd() + retention);
+        } else {
+            long now = timerService.currentProcessingTime();
+            timerService.registerProcessingTimeTimer(now - now % mergeDelay + mergeDelay);
+            timerService.registerProcessingTimeTimer(partial.getWindowEnd() + retention);
+        }
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<PvUvResult> out) throws Exception {
+        if (dirty.value() != null) {
+            long pv = 0;
+            long uv = 0;
+            long windowStart = 0;
+            for (PvUvPartial partial : partials.values()) {
+                pv += partial.getPv();
+                uv += partial.getUv();
+                windowStart = partial.getWindowStart();
+            }
+            out.collect(new PvUvResult(windowStart, ctx.getCurrentKey(), TOTAL_SCENE_ID, TOTAL_SCENE_ID, pv, uv));
+            dirty.clear();
+        }
+        if (timestamp >= ctx.getCurrentKey() + retention) {
+            partials.clear();
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.geekbang.flink.project;
+
+import java.io.Serializable;
+
+/**
+ * 用户去重计数 (UV) 的可合并结构, 同一窗口的多个分片 (pane) 可以合并后再求基数
+ */
+public interface DistinctCounter extends Serializable {
+
+    void add(int userId);
+
+    /**
+     * 合并另一个同类型的计数器, 合并后相当于对两者的输入做并集
+     */
+    void merge(DistinctCounter other);
+
+    long cardinality();
+
+    /**
+     * UV 的计算方式
+     */
+    enum Mode {
+        /** 精确去重, 内存随用户数线性增长 */
+        EXACT,
+        /** HyperLogLog 近似去重, 内存只取决于精度 */
+        HLL,
+        /** 基于 Roaring 压缩位图的精确去重, 内存远小于 HashSet, 合并是位运算 */
+        BITMAP;
+
+        public DistinctCounter create(int hllPrecision) {
+            switch (this) {
+                case HLL:
+                    return new HyperLogLog(hllPrecision);
+                case BITMAP:
+                    return new BitmapDistinctCounter();
+                case EXACT:
+                default:
+                    return new ExactDistinctCounter();
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.geekbang.flink.project;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 基于 HashSet 的精确去重
+ */
+public class ExactDistinctCounter implements DistinctCounter {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Set<Integer> userIds = new HashSet<>();
+
+    @Override
+    public void add(int userId) {
+        userIds.add(userId);
+    }
+
+    @Override
+    public void merge(DistinctCounter other) {
+        userIds.addAll(((ExactDistinctCounter) other).userIds);
+    }
+
+    @Override
+    public long cardinality() {
+        return userIds.size();
+    }
+}
@@ -0,0 +1,17 @@
+package com.geekbang.flink.project;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Space-Saving 统计出的一个热点 key, 真实次数在 [count - error, count] 之间
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class HeavyHitter {
+    private String key;
+    private long count;
+    private long error;
+}
@@ -0,0 +1,111 @@
+package com.geekbang.flink.project;
+
+/**
+ * HyperLogLog 近似去重计数
+ *
+ * <p>使用 2^precision 个 1 字节的寄存器, 标准误差约为 1.04 / sqrt(2^precision),
+ * 例如 precision = 12 时占用 4KB, 误差约 1.6%. 相同精度的两个 sketch 合并时逐个寄存器取最大值,
+ * 因此各个分片的 sketch 可以任意顺序合并.
+ */
+public class HyperLogLog implements DistinctCounter {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_PRECISION = 12;
+    public static final int MIN_PRECISION = 4;
+    public static final int MAX_PRECISION = 18;
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+            throw new IllegalArgumentException(
+                    "HyperLogLog precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ": " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    @Override
+    public void add(int userId) {
+        addHash(hash(userId));
+    }
+
+    private void addHash(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // 低位补 1, 保证 rank 不超过 64 - precision + 1
+        long rest = (hash << precision) | (1L << (precision - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (registers[index] < rank) {
+            registers[index] = rank;
+        }
+    }
+
+    @Override
+    public void merge(DistinctCounter other) {
+        HyperLogLog that = (HyperLogLog) other;
+        if (that.precision != precision) {
+            throw new IllegalArgumentException(
+                    "Cannot merge HyperLogLog with precision " + that.precision + " into " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] < that.registers[i]) {
+                registers[i] = that.registers[i];
+            }
+        }
+    }
+
+    @Override
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += Double.longBitsToDouble((1023L - register) << 52);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // 小基数时使用 linear counting
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    /**
+     * murmur3 的 fmix64, 把连续的 userId 打散到整个 64 位空间
+     */
+    static long hash(long value) {
+        long h = value;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
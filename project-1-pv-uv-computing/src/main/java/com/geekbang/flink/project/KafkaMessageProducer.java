@@ -1,20 +1,24 @@
 package com.geekbang.flink.project;
 
-import com.alibaba.fastjson.JSONObject;
 import org.apache.kafka.clients.producer.KafkaProducer;
 import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
+/**
+ * 每秒发送一条消息的示例生产者, 压测使用 {@link PvUvLoadGenerator}
+ */
 public class KafkaMessageProducer {
 
-    static SimpleDateFormat sdf1 = new SimpleDateFormat("yyyy-MM-dd");
-    static SimpleDateFormat sdf2 = new SimpleDateFormat("HH:mm:ss");
+    static final String[] ACTIONS = {"click", "bug", "login", "logout"};
+    static final String[] CATEGORIES = {"c1", "c2", "c3", "c4"};
+
+    //与 Flink 作业读取时使用相同的格式
+    static final UserBehaviorEventSchema SCHEMA = new UserBehaviorEventSchema();
 
     public static void main(String[] args) {
         Map<String, Object> kafkaParam = new HashMap<>(3);
@@ -22,13 +26,13 @@ public class KafkaMessageProducer {
         System.out.println("produce-topic:" + topic);
         kafkaParam.put("bootstrap.servers", Constants.KAFKA_BOOTSTRAP_SERVER);
         kafkaParam.put("key.serializer", StringSerializer.class.getName());
-        kafkaParam.put("value.serializer", StringSerializer.class.getName());
+        kafkaParam.put("value.serializer", ByteArraySerializer.class.getName());
 
-        KafkaProducer<String, String> kafkaProducer = new KafkaProducer<>(kafkaParam);
+        KafkaProducer<String, byte[]> kafkaProducer = new KafkaProducer<>(kafkaParam);
         int index = 0;
         while (index < 100000) {
-            String msg = genMessage();
-            ProducerRecord<String, String> record = new ProducerRecord<>(topic, msg);
+            byte[] msg = genMessage();
+            ProducerRecord<String, byte[]> record = new ProducerRecord<>(topic, msg);
             kafkaProducer.send(record);
             try {
                 Thread.sleep(1000);
@@ -44,24 +48,18 @@ public class KafkaMessageProducer {
      * 构造消息
      * @return
      */
-    public static String genMessage() {
-        Date date = new Date();
-        StringBuffer ts = new StringBuffer();
-        ts.append(sdf1.format(date))
-                .append("T")
-                .append(sdf2.format(date))
-                .append("Z");
-        String[] action = {"click", "bug", "login", "logout"};
-        String[] category = {"c1", "c2", "c3", "c4"};
+    public static byte[] genMessage() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
         UserBehaviorEvent userBehaviorEvent = new UserBehaviorEvent();
-        userBehaviorEvent.setUserId(new Random().nextInt(10000));
-        userBehaviorEvent.setItemId(new Random().nextInt(10000));
-        userBehaviorEvent.setCategory(category[new Random().nextInt(category.length)]);
-        userBehaviorEvent.setAction(action[new Random().nextInt(action.length)]);
+        userBehaviorEvent.setUserId(random.nextInt(10000));
+        userBehaviorEvent.setItemId(random.nextInt(10000));
+        userBehaviorEvent.setCategory(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+        userBehaviorEvent.setAction(ACTIONS[random.nextInt(ACTIONS.length)]);
         userBehaviorEvent.setTs(System.currentTimeMillis());
-        String str = JSONObject.toJSONString(userBehaviorEvent);
-        System.out.println(str);
-        return str;
+        // serialize 复用 schema 内部的缓冲区, 不是线程安全的
+        synchronized (SCHEMA) {
+            return SCHEMA.serialize(userBehaviorEvent);
+        }
     }
 }
 
@@ -1,11 +1,11 @@
 package com.geekbang.flink.project;
 
 import lombok.extern.slf4j.Slf4j;
-import org.apache.flink.api.common.eventtime.*;
-import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
 import org.apache.flink.api.common.restartstrategy.RestartStrategies;
-import org.apache.flink.api.java.tuple.Tuple4;
+import org.apache.flink.api.common.typeinfo.Types;
 import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.contrib.streaming.state.RocksDBStateBackend;
 import org.apache.flink.core.fs.Path;
 import org.apache.flink.runtime.state.filesystem.FsStateBackend;
 import org.apache.flink.streaming.api.CheckpointingMode;
@@ -14,21 +14,11 @@ import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.datastream.DataStreamSource;
 import org.apache.flink.streaming.api.environment.CheckpointConfig;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
-import org.apache.flink.streaming.api.functions.windowing.ProcessAllWindowFunction;
-import org.apache.flink.streaming.api.windowing.assigners.SlidingProcessingTimeWindows;
 import org.apache.flink.streaming.api.windowing.time.Time;
-import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
-import org.apache.flink.streaming.connectors.elasticsearch.ActionRequestFailureHandler;
-import org.apache.flink.streaming.connectors.elasticsearch.RequestIndexer;
-import org.apache.flink.streaming.connectors.elasticsearch7.ElasticsearchSink;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer010;
-import org.apache.flink.util.Collector;
-import org.apache.http.HttpHost;
-import org.elasticsearch.action.ActionRequest;
-import org.elasticsearch.action.index.IndexRequest;
-import org.elasticsearch.client.Requests;
 
-import java.io.Serializable;
+import java.time.Duration;
+import java.time.ZoneId;
 import java.util.*;
 
 import static com.geekbang.flink.project.Constants.WS_URL;
@@ -51,120 +41,81 @@ public class PVAndUVExample {
         StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
         env.setStreamTimeCharacteristic(TimeCharacteristic.EventTime);
 
+        // Elasticsearch sink 在 checkpoint 时 flush, 开启 checkpoint 后结果至少写入一次
+        long checkpointInterval = parameterTool.getLong("checkpoint-interval-ms", 10000L);
+        if (checkpointInterval > 0) {
+            env.enableCheckpointing(checkpointInterval, CheckpointingMode.EXACTLY_ONCE);
+        }
+        // 当天累计的去重结构较大, 可以放在 RocksDB 中并增量 checkpoint
+        if ("rocksdb".equalsIgnoreCase(parameterTool.get("state-backend", "memory"))) {
+            env.setStateBackend(new RocksDBStateBackend(parameterTool.getRequired("checkpoint-path"), true));
+        }
+
+        // 时间语义: event 按事件时间和 watermark 计算窗口, processing 按处理时间
+        boolean eventTime = "event".equalsIgnoreCase(parameterTool.get("time-mode", "event"));
+        long maxOutOfOrderness = parameterTool.getLong("max-out-of-orderness-ms", 2000L);
+        long idleTimeout = parameterTool.getLong("idle-timeout-ms", 10000L);
+        long allowedLateness = parameterTool.getLong("allowed-lateness-ms", Time.minutes(1).toMilliseconds());
+
+        // 在 Kafka consumer 内部按分区生成 watermark, 空闲分区不会阻塞 watermark 前进
         kafka.assignTimestampsAndWatermarks(
                 WatermarkStrategy
-                        .forGenerator((ctx) -> new PeriodicWatermarkGenerator())
-                        .withTimestampAssigner((ctx) -> new TimeStampExtractor()));
+                        .<UserBehaviorEvent>forBoundedOutOfOrderness(Duration.ofMillis(maxOutOfOrderness))
+                        .withTimestampAssigner((event, recordTimestamp) -> event.getTs())
+                        .withIdleness(Duration.ofMillis(idleTimeout)));
 
         DataStreamSource<UserBehaviorEvent> dataStreamByEventTime = env.addSource(kafka);
 
-        DataStream<Tuple4<Long, Long, Long, Integer>> uvCounter = dataStreamByEventTime
-                .windowAll(SlidingProcessingTimeWindows.of(Time.seconds(5), Time.seconds(1)))
-                .allowedLateness(Time.minutes(5))
-                .process(new ProcessAllWindowFunction<UserBehaviorEvent, Tuple4<Long, Long, Long, Integer>, TimeWindow>() {
-                    @Override
-                    public void process(Context context, Iterable<UserBehaviorEvent> elements, Collector<Tuple4<Long, Long, Long, Integer>> out) {
-                        Long pv = 0L;
-                        Set<Integer> userIds = new HashSet<>();
-                        Iterator<UserBehaviorEvent> iterator = elements.iterator();
-                        while (iterator.hasNext()) {
-                            UserBehaviorEvent userBehavior = iterator.next();
-                            pv++;
-                            userIds.add(userBehavior.getUserId());
-                        }
-                        TimeWindow window = context.window();
-                        out.collect(new Tuple4<>(window.getStart(), window.getEnd(), pv, userIds.size()));
-                    }
-                });
-
-        uvCounter.print().setParallelism(1);
-
-        List<HttpHost> httpHosts = new ArrayList<>();
-        httpHosts.add(new HttpHost("node01", 9200, "http"));
-
-        ElasticsearchSink.Builder<Tuple4<Long, Long, Long, Integer>> esSinkBuilder = new ElasticsearchSink.Builder<>(
-                httpHosts,
-                (Tuple4<Long, Long, Long, Integer> element, RuntimeContext ctx, RequestIndexer indexer) -> {
-                    indexer.add(createIndexRequest(element, parameterTool));
-                });
-
-        esSinkBuilder.setFailureHandler(
-                new CustomFailureHandler(parameterTool.getRequired("index")));
-
-        // this instructs the sink to emit after every element, otherwise they would be buffered
-        esSinkBuilder.setBulkFlushMaxActions(1);
-
-        uvCounter.addSink(esSinkBuilder.build());
-
-        uvCounter.addSink(new WebsocketSink(WS_URL));
+        // UV 计算方式: exact 为精确去重, hll 为 HyperLogLog 近似去重, bitmap 为压缩位图精确去重
+        DistinctCounter.Mode uvMode = DistinctCounter.Mode.valueOf(parameterTool.get("uv-mode", "exact").toUpperCase());
+        int hllPrecision = parameterTool.getInt("hll-precision", HyperLogLog.DEFAULT_PRECISION);
 
-        env.execute(parameterTool.get("appName", "PVAndUVExample"));
-
-    }
+        // 第一阶段按 userId 分桶并行预聚合, 第二阶段按窗口合并各个桶的结果
+        int buckets = parameterTool.getInt("uv-buckets", 128);
+        long mergeDelay = parameterTool.getLong("merge-delay-ms", 500L);
 
-    private static class PeriodicWatermarkGenerator implements WatermarkGenerator<UserBehaviorEvent>, Serializable {
+        // cube=true 时按 类目 × 行为 拆分, 并输出每个类目, 每个行为和总计的汇总 (类目或行为为 total);
+        // 否则只输出总计. 所有拆分都在同一次遍历中计算
+        boolean cube = parameterTool.getBoolean("cube", false);
 
-        private long currentWatermark = Long.MIN_VALUE;
+        // 5 秒窗口, 每秒滑动一次, 每个事件只更新一个 1 秒分片
+        long windowSize = Time.seconds(5).toMilliseconds();
+        DataStream<PvUvPartial> partials = dataStreamByEventTime
+                .keyBy(event -> PvUvPartial.bucketOf(event.getUserId(), buckets))
+                .process(new PanedPvUvFunction(
+                        eventTime, windowSize, Time.seconds(1).toMilliseconds(), allowedLateness, cube, uvMode, hllPrecision));
 
-        @Override
-        public void onEvent(
-                UserBehaviorEvent event, long eventTimestamp, WatermarkOutput output) {
-            currentWatermark = eventTimestamp;
-        }
+        DataStream<PvUvResult> uvCounter = partials
+                .keyBy(PvUvPartial::cellKey, Types.TUPLE(Types.LONG, Types.STRING, Types.STRING))
+                .process(new PvUvMergeFunction(eventTime, mergeDelay, allowedLateness + windowSize));
 
-        @Override
-        public void onPeriodicEmit(WatermarkOutput output) {
-            long effectiveWatermark =
-                    currentWatermark == Long.MIN_VALUE ? Long.MIN_VALUE : currentWatermark - 1;
-            output.emitWatermark(new Watermark(effectiveWatermark));
-        }
-    }
+        uvCounter.print().setParallelism(1);
 
-    private static class TimeStampExtractor implements TimestampAssigner<UserBehaviorEvent> {
-        @Override
-        public long extractTimestamp(UserBehaviorEvent element, long recordTimestamp) {
-            return element.getTs();
-        }
-    }
+        uvCounter.addSink(PvUvElasticsearchSink.create(parameterTool)).name("Elasticsearch Sink");
 
-    private static class CustomFailureHandler implements ActionRequestFailureHandler {
+        //看板推送: 每个子任务独立的有界队列, 队列满时丢弃, 不反压作业
+        uvCounter.addSink(new WebsocketSink(parameterTool.get("ws-url", WS_URL),
+                parameterTool.getInt("ws-queue-capacity", 10000),
+                parameterTool.getInt("ws-batch-size", 100),
+                parameterTool.getLong("ws-max-backoff-ms", 30000L))).name("Websocket Sink");
 
-        private static final long serialVersionUID = 942269087742453482L;
+        // 当天累计 PV/UV: 每隔 daily-fire-interval-ms 提前输出一次, 按 day-timezone 划分自然日
+        if (parameterTool.getBoolean("daily-uv", false)) {
+            long fireInterval = parameterTool.getLong("daily-fire-interval-ms", Time.seconds(10).toMilliseconds());
+            ZoneId dayZone = ZoneId.of(parameterTool.get("day-timezone", "Asia/Shanghai"));
+            DataStream<PvUvResult> dailyUvCounter = dataStreamByEventTime
+                    .keyBy(event -> PvUvPartial.bucketOf(event.getUserId(), buckets))
+                    .process(new DailyUvFunction(eventTime, fireInterval, dayZone, allowedLateness, uvMode, hllPrecision))
+                    .keyBy(PvUvPartial::getWindowEnd)
+                    .process(new DailyUvMergeFunction(eventTime, mergeDelay, allowedLateness + fireInterval));
 
-        private final String index;
+            dailyUvCounter.print().setParallelism(1);
 
-        CustomFailureHandler(String index) {
-            this.index = index;
+            dailyUvCounter.addSink(PvUvElasticsearchSink.create(parameterTool)).name("Elasticsearch Daily Sink");
         }
 
-        @Override
-        public void onFailure(ActionRequest action, Throwable failure, int restStatusCode, RequestIndexer indexer) throws Throwable {
-            if (action instanceof IndexRequest) {
-                Map<String, Object> json = new HashMap<>();
-                json.put("data", ((IndexRequest) action).source());
-
-                indexer.add(
-                        Requests.indexRequest()
-                                .index(index)
-                                .id(((IndexRequest) action).id())
-                                .source(json));
-            } else {
-                throw new IllegalStateException("unexpected");
-            }
-        }
-    }
+        env.execute(parameterTool.get("appName", "PVAndUVExample"));
 
-    private static IndexRequest createIndexRequest(Tuple4<Long, Long, Long, Integer> element, ParameterTool parameterTool) {
-        Map<String, Object> json = new HashMap<>();
-        json.put("window_start", "1234");
-        json.put("window_end", "1234");
-        json.put("pv", "1234");
-        json.put("uv", "1234");
-        String index = parameterTool.getRequired("index");
-        return Requests.indexRequest()
-                .index(index)
-                .id(element.f1.toString())
-                .source(json);
     }
 
 }
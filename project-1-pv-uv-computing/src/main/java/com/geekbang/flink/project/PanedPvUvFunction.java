@@ -0,0 +1,121 @@
+package com.geekbang.flink.project;
+
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.streaming.api.TimerService;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 基于分片 (pane) 的滑动窗口 PV/UV
+ *
+ * <p>滑动窗口按滑动步长切成互不重叠的分片, 每个事件只更新它所在分片的 {@link PvUvCube} 中的一个叶子单元格,
+ * 不缓存原始事件. 窗口结束时把窗口覆盖的 windowSize / slide 个分片合并, 再由叶子单元格合并出各级汇总,
+ * 每个单元格输出一条结果.
+ *
+ * <p>事件时间模式下窗口由 watermark 触发. 迟到但未超过 allowedLateness 的事件更新所在分片后,
+ * 只重新输出该分桶受影响的窗口, 且同一个 watermark 内的多条迟到事件合并为一次输出;
+ * 超过 allowedLateness 的事件被丢弃并计入 lateEventsDropped 指标.
+ */
+public class PanedPvUvFunction extends KeyedProcessFunction<Integer, UserBehaviorEvent, PvUvPartial> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean eventTime;
+    private final long windowSize;
+    private final long slide;
+    private final long allowedLateness;
+    private final boolean dimensions;
+    private final DistinctCounter.Mode uvMode;
+    private final int hllPrecision;
+
+    private transient MapState<Long, PvUvCube> panes;
+    private transient Counter lateEventsDropped;
+
+    public PanedPvUvFunction(boolean eventTime, long windowSize, long slide, long allowedLateness,
+                             boolean dimensions, DistinctCounter.Mode uvMode, int hllPrecision) {
+        if (windowSize % slide != 0) {
+            throw new IllegalArgumentException("Window size " + windowSize + " must be a multiple of the slide " + slide);
+        }
+        this.eventTime = eventTime;
+        this.windowSize = windowSize;
+        this.slide = slide;
+        this.allowedLateness = eventTime ? allowedLateness : 0L;
+        this.dimensions = dimensions;
+        this.uvMode = uvMode;
+        this.hllPrecision = hllPrecision;
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        panes = getRuntimeContext().getMapState(
+                new MapStateDescriptor<>("panes", TypeInformation.of(Long.class), TypeInformation.of(PvUvCube.class)));
+        lateEventsDropped = getRuntimeContext().getMetricGroup().counter("lateEventsDropped");
+    }
+
+    @Override
+    public void processElement(UserBehaviorEvent event, Context ctx, Collector<PvUvPartial> out) throws Exception {
+        TimerService timerService = ctx.timerService();
+        long time = eventTime ? ctx.timestamp() : timerService.currentProcessingTime();
+        long paneStart = time - Math.floorMod(time, slide);
+        long watermark = timerService.currentWatermark();
+        if (eventTime && paneStart + windowSize <= watermark - allowedLateness) {
+            lateEventsDropped.inc();
+            return;
+        }
+
+        PvUvCube pane = panes.get(paneStart);
+        // 新分片参与的每个窗口结束时都要输出一次; 迟到事件所在分片的窗口已经输出过,
+        // 重新注册的定时器在下一个 watermark 到达时触发, 输出更新后的结果
+        if (pane == null || (eventTime && paneStart + slide <= watermark)) {
+            for (long windowEnd = paneStart + slide; windowEnd <= paneStart + windowSize; windowEnd += slide) {
+                if (eventTime && windowEnd <= watermark - allowedLateness) {
+                    continue;
+                }
+                if (eventTime) {
+                    timerService.registerEventTimeTimer(windowEnd);
+                } else {
+                    timerService.registerProcessingTimeTimer(windowEnd);
+                }
+            }
+        }
+        if (pane == null) {
+            pane = new PvUvCube(dimensions, uvMode, hllPrecision);
+        }
+        pane.add(event);
+        panes.put(paneStart, pane);
+    }
+
+    @Override
+    public void onTimer(long windowEnd, OnTimerContext ctx, Collector<PvUvPartial> out) throws Exception {
+        long windowStart = windowEnd - windowSize;
+        PvUvCube window = new PvUvCube(dimensions, uvMode, hllPrecision);
+        Iterator<Map.Entry<Long, PvUvCube>> iterator = panes.iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, PvUvCube> pane = iterator.next();
+            long paneStart = pane.getKey();
+            if (paneStart >= windowStart && paneStart < windowEnd) {
+                window.merge(pane.getValue());
+            }
+            // 之后输出的窗口 (包括迟到更新) 都在 windowEnd - allowedLateness 之后结束
+            if (paneStart + windowSize <= windowEnd - allowedLateness) {
+                iterator.remove();
+            }
+        }
+        for (Map.Entry<String, Map<String, PvUvAccumulator>> category : window.withRollups().entrySet()) {
+            for (Map.Entry<String, PvUvAccumulator> action : category.getValue().entrySet()) {
+                PvUvAccumulator cell = action.getValue();
+                if (cell.getPv() > 0) {
+                    out.collect(new PvUvPartial(ctx.getCurrentKey(), windowStart, windowEnd,
+                            cell.getPv(), cell.getUsers().cardinality(), category.getKey(), action.getKey()));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.geekbang.flink.project;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 窗口 (或窗口分片) 内的 PV 计数和用户去重结构
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PvUvAccumulator {
+    private long pv;
+    private DistinctCounter users;
+
+    public void add(UserBehaviorEvent event) {
+        pv++;
+        users.add(event.getUserId());
+    }
+
+    public PvUvAccumulator merge(PvUvAccumulator other) {
+        pv += other.pv;
+        users.merge(other.users);
+        return this;
+    }
+}
@@ -0,0 +1,107 @@
+package com.geekbang.flink.project;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.geekbang.flink.project.Constants.SCENE_ESCAPE_PREFIX;
+import static com.geekbang.flink.project.Constants.TOTAL_SCENE_ID;
+import static com.geekbang.flink.project.Constants.UNKNOWN_SCENE_ID;
+
+/**
+ * 类目 × 行为 的 PV/UV 立方体
+ *
+ * <p>事件只更新它所在的叶子单元格. 汇总 (某类目的全部行为, 某行为的全部类目, 以及总计) 在输出时由叶子单元格的
+ * 去重结构合并得到, 不会按维度重复统计原始事件. 不按维度拆分时只有一个 总计 × 总计 的单元格.
+ *
+ * <p>{@link Constants#TOTAL_SCENE_ID} 和 {@link Constants#UNKNOWN_SCENE_ID} 是保留值, 与之相同或以
+ * {@link Constants#SCENE_ESCAPE_PREFIX} 开头的真实取值会加上该前缀, 不会并入汇总行.
+ */
+@Data
+@NoArgsConstructor
+public class PvUvCube {
+    private boolean dimensions;
+    private DistinctCounter.Mode uvMode;
+    private int hllPrecision;
+    // category -> action -> 叶子单元格
+    private Map<String, Map<String, PvUvAccumulator>> cells = new HashMap<>();
+
+    public PvUvCube(boolean dimensions, DistinctCounter.Mode uvMode, int hllPrecision) {
+        this.dimensions = dimensions;
+        this.uvMode = uvMode;
+        this.hllPrecision = hllPrecision;
+    }
+
+    public void add(UserBehaviorEvent event) {
+        String category = dimensions ? sceneOf(event.getCategory()) : TOTAL_SCENE_ID;
+        String action = dimensions ? sceneOf(event.getAction()) : TOTAL_SCENE_ID;
+        cell(cells, category, action).add(event);
+    }
+
+    /**
+     * 逐个叶子单元格合并, 不会引用 other 中的对象
+     */
+    public PvUvCube merge(PvUvCube other) {
+        for (Map.Entry<String, Map<String, PvUvAccumulator>> category : other.cells.entrySet()) {
+            for (Map.Entry<String, PvUvAccumulator> action : category.getValue().entrySet()) {
+                cell(cells, category.getKey(), action.getKey()).merge(action.getValue());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 叶子单元格加上各级汇总, 汇总是新建的结构, 不会修改叶子单元格
+     */
+    public Map<String, Map<String, PvUvAccumulator>> withRollups() {
+        if (!dimensions) {
+            return cells;
+        }
+        Map<String, Map<String, PvUvAccumulator>> result = new HashMap<>(cells);
+        Map<String, PvUvAccumulator> actionTotals = new HashMap<>();
+        PvUvAccumulator total = newAccumulator();
+        for (Map.Entry<String, Map<String, PvUvAccumulator>> category : cells.entrySet()) {
+            PvUvAccumulator categoryTotal = newAccumulator();
+            for (Map.Entry<String, PvUvAccumulator> action : category.getValue().entrySet()) {
+                categoryTotal.merge(action.getValue());
+                cell(actionTotals, action.getKey()).merge(action.getValue());
+            }
+            total.merge(categoryTotal);
+            Map<String, PvUvAccumulator> row = new HashMap<>(category.getValue());
+            row.put(TOTAL_SCENE_ID, categoryTotal);
+            result.put(category.getKey(), row);
+        }
+        actionTotals.put(TOTAL_SCENE_ID, total);
+        result.put(TOTAL_SCENE_ID, actionTotals);
+        return result;
+    }
+
+    private PvUvAccumulator cell(Map<String, Map<String, PvUvAccumulator>> cube, String category, String action) {
+        return cell(cube.computeIfAbsent(category, key -> new HashMap<>()), action);
+    }
+
+    private PvUvAccumulator cell(Map<String, PvUvAccumulator> row, String action) {
+        PvUvAccumulator cell = row.get(action);
+        if (cell == null) {
+            cell = newAccumulator();
+            row.put(action, cell);
+        }
+        return cell;
+    }
+
+    private PvUvAccumulator newAccumulator() {
+        return new PvUvAccumulator(0L, uvMode.create(hllPrecision));
+    }
+
+    static String sceneOf(String value) {
+        if (value == null || value.isEmpty()) {
+            return UNKNOWN_SCENE_ID;
+        }
+        if (value.equals(TOTAL_SCENE_ID) || value.equals(UNKNOWN_SCENE_ID) || value.startsWith(SCENE_ESCAPE_PREFIX)) {
+            return SCENE_ESCAPE_PREFIX + value;
+        }
+        return value;
+    }
+}
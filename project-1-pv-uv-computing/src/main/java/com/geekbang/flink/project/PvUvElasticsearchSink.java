@@ -0,0 +1,87 @@
+package com.geekbang.flink.project;
+
+import org.apache.flink.api.common.functions.RuntimeContext;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.connectors.elasticsearch.ElasticsearchSinkBase;
+import org.apache.flink.streaming.connectors.elasticsearch.ElasticsearchSinkFunction;
+import org.apache.flink.streaming.connectors.elasticsearch.RequestIndexer;
+import org.apache.flink.streaming.connectors.elasticsearch.util.RetryRejectedExecutionFailureHandler;
+import org.apache.flink.streaming.connectors.elasticsearch7.ElasticsearchSink;
+import org.apache.http.HttpHost;
+import org.elasticsearch.action.index.IndexRequest;
+import org.elasticsearch.client.Requests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把 PV/UV 结果批量写入 Elasticsearch
+ *
+ * <p>文档 id 由窗口起止时间和 类目 × 行为 单元格决定, 同一窗口的迟到更新和故障恢复后的重放都会覆盖同一个文档,
+ * 写入是幂等的. 索引的 mapping 见 resources/es/pv-uv-index.json, 可以预先创建:
+ * {@code curl -XPUT -H 'Content-Type: application/json' http://node01:9200/<index> -d @pv-uv-index.json}
+ *
+ * <p>请求按 es-bulk-actions 条, es-bulk-size-mb 或 es-bulk-interval-ms 攒批发送,
+ * 被拒绝的请求 (EsRejectedExecutionException) 按 es-backoff-delay-ms 起始的指数退避最多重试
+ * es-backoff-retries 次. 开启 checkpoint 时 sink 默认在 checkpoint 时 flush 并等待所有未完成的请求,
+ * 所以 checkpoint 之前的结果至少写入一次.
+ */
+public class PvUvElasticsearchSink {
+
+    public static ElasticsearchSink<PvUvResult> create(ParameterTool parameterTool) {
+        String index = parameterTool.getRequired("index");
+
+        List<HttpHost> httpHosts = new ArrayList<>();
+        for (String host : parameterTool.get(Constants.ES_HOSTS_KEY, "node01:9200").split(",")) {
+            httpHosts.add(HttpHost.create(host.trim()));
+        }
+
+        ElasticsearchSink.Builder<PvUvResult> esSinkBuilder =
+                new ElasticsearchSink.Builder<>(httpHosts, new PvUvSinkFunction(index));
+
+        esSinkBuilder.setBulkFlushMaxActions(parameterTool.getInt("es-bulk-actions", 1000));
+        esSinkBuilder.setBulkFlushMaxSizeMb(parameterTool.getInt("es-bulk-size-mb", 5));
+        esSinkBuilder.setBulkFlushInterval(parameterTool.getLong("es-bulk-interval-ms", 1000L));
+        esSinkBuilder.setBulkFlushBackoff(true);
+        esSinkBuilder.setBulkFlushBackoffType(ElasticsearchSinkBase.FlushBackoffType.EXPONENTIAL);
+        esSinkBuilder.setBulkFlushBackoffRetries(parameterTool.getInt("es-backoff-retries", 5));
+        esSinkBuilder.setBulkFlushBackoffDelay(parameterTool.getLong("es-backoff-delay-ms", 200L));
+        esSinkBuilder.setFailureHandler(new RetryRejectedExecutionFailureHandler());
+
+        return esSinkBuilder.build();
+    }
+
+    private static class PvUvSinkFunction implements ElasticsearchSinkFunction<PvUvResult> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String index;
+
+        PvUvSinkFunction(String index) {
+            this.index = index;
+        }
+
+        @Override
+        public void process(PvUvResult element, RuntimeContext ctx, RequestIndexer indexer) {
+            indexer.add(createIndexRequest(element));
+        }
+
+        private IndexRequest createIndexRequest(PvUvResult element) {
+            Map<String, Object> json = new HashMap<>(8);
+            json.put("window_start", element.getWindowStart());
+            json.put("window_end", element.getWindowEnd());
+            json.put("category", element.getCategory());
+            json.put("action", element.getAction());
+            json.put("pv", element.getPv());
+            json.put("uv", element.getUv());
+            return Requests.indexRequest()
+                    .index(index)
+                    // 类目前加上长度, 类目或行为中的 _ 不会让两个单元格得到相同的 id
+                    .id(element.getWindowStart() + "_" + element.getWindowEnd() + "_" + element.getCategory().length()
+                            + ":" + element.getCategory() + "_" + element.getAction())
+                    .source(json);
+        }
+    }
+}
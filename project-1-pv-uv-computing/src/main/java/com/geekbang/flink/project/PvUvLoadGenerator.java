@@ -0,0 +1,332 @@
+package com.geekbang.flink.project;
+
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PV/UV 作业的压测数据生成器
+ *
+ * <p>多个线程按总速率 rate 生成 UserBehaviorEvent, 用户和商品按 Zipf 分布抽样, 每个商品属于固定的类目.
+ * 消息格式与 {@link UserBehaviorEventSchema} 相同, 字段名, 每个商品的 id 和类目等不变的部分预先编码好,
+ * 生成时只拼接字节, 不创建中间对象.
+ *
+ * <p>output=kafka 时所有线程共享一个异步批量发送的 KafkaProducer; output=file 时按行写入本地文件,
+ * 可以用 {@code kafka-console-producer.sh --topic <topic> < file} 重放.
+ *
+ * <p>参数: --rate 100000 --threads 4 --users 1000000 --items 100000 --categories 100
+ * --user-skew 0.8 --item-skew 1.1 --duration-s 0 (0 表示一直运行)
+ * --output kafka|file --brokers node01:9092 --kafka-topic default --file events.json
+ * --batch-size-kb 256 --linger-ms 20 --out-of-order-ms 0
+ *
+ * <p>Ctrl-C 时由 shutdown hook 停止生成线程, 写出各线程未满的批次后关闭输出, 文件不会只写一半.
+ */
+public class PvUvLoadGenerator {
+
+    private static final String[] ACTIONS = {"click", "buy", "cart", "fav"};
+
+    private static final byte[] USER_ID = ascii("{\"userId\":");
+    private static final byte[] ITEM_ID = ascii(",\"itemId\":");
+    private static final byte[] ACTION = ascii(",\"action\":\"");
+    private static final byte[] TS = ascii("\",\"ts\":");
+
+    // 每批最多生成的事件数, 每批之后按速率休眠
+    private static final int MAX_CHUNK = 1000;
+
+    public static void main(String[] args) throws Exception {
+        final ParameterTool parameterTool = ParameterTool.fromArgs(args);
+        double rate = parameterTool.getDouble("rate", 100000);
+        int threads = parameterTool.getInt("threads", 4);
+        int users = parameterTool.getInt("users", 1000000);
+        int items = parameterTool.getInt("items", 100000);
+        int categories = parameterTool.getInt("categories", 100);
+        long durationMs = TimeUnit.SECONDS.toMillis(parameterTool.getLong("duration-s", 0L));
+        long outOfOrderMs = parameterTool.getLong("out-of-order-ms", 0L);
+
+        ZipfDistribution userDistribution = new ZipfDistribution(users, parameterTool.getDouble("user-skew", 0.8));
+        ZipfDistribution itemDistribution = new ZipfDistribution(items, parameterTool.getDouble("item-skew", 1.1));
+        byte[][] itemFragments = encodeItems(items, categories);
+        byte[][] actions = new byte[ACTIONS.length][];
+        for (int i = 0; i < ACTIONS.length; i++) {
+            actions[i] = ascii(ACTIONS[i]);
+        }
+
+        Output output = "file".equalsIgnoreCase(parameterTool.get("output", "kafka"))
+                ? new FileOutput(parameterTool.get("file", "events.json"))
+                : new KafkaOutput(parameterTool);
+
+        AtomicLong sent = new AtomicLong();
+        AtomicBoolean running = new AtomicBoolean(true);
+        long deadline = durationMs > 0 ? System.currentTimeMillis() + durationMs : Long.MAX_VALUE;
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            double threadRate = rate / threads;
+            // 每批大约 10ms 的量, 低速率时不会集中成每秒一次的突发
+            int chunk = (int) Math.max(1, Math.min(MAX_CHUNK, threadRate / 100));
+            workers[t] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                Writer writer = output.newWriter();
+                byte[] buffer = new byte[256];
+                long start = System.nanoTime();
+                long generated = 0;
+                try {
+                    while (running.get() && System.currentTimeMillis() < deadline) {
+                        long now = System.currentTimeMillis();
+                        for (int i = 0; i < chunk; i++) {
+                            long ts = outOfOrderMs > 0 ? now - random.nextLong(outOfOrderMs) : now;
+                            int length = encode(buffer, userDistribution.sample(random),
+                                    itemFragments[itemDistribution.sample(random)], actions[random.nextInt(actions.length)], ts);
+                            writer.write(buffer, length);
+                        }
+                        generated += chunk;
+                        sent.addAndGet(chunk);
+                        // 按目标速率计算下一批的发送时间
+                        long sleepNanos = start + (long) (generated / threadRate * 1e9) - System.nanoTime();
+                        if (sleepNanos > 0) {
+                            try {
+                                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                            } catch (InterruptedException e) {
+                                break;
+                            }
+                        }
+                    }
+                } finally {
+                    writer.flush();
+                }
+            }, "load-generator-" + t);
+            workers[t].start();
+        }
+
+        Thread reporter = new Thread(() -> {
+            long last = 0;
+            while (true) {
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long total = sent.get();
+                System.out.printf("generated %d events (%d/s), failed %d%n", total, total - last, output.failed());
+                last = total;
+            }
+        }, "load-generator-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+
+        Runnable finish = new Runnable() {
+            private boolean finished;
+
+            @Override
+            public synchronized void run() {
+                // 正常结束和 Ctrl-C 都只关闭一次, shutdown hook 会等待主线程关闭完成
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                running.set(false);
+                try {
+                    for (Thread worker : workers) {
+                        // 打断按速率的休眠
+                        worker.interrupt();
+                        worker.join();
+                    }
+                    output.close();
+                } catch (InterruptedException | IOException e) {
+                    System.err.println("failed to close output: " + e);
+                }
+                System.out.printf("generated %d events, failed %d%n", sent.get(), output.failed());
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(new Thread(finish, "load-generator-shutdown"));
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        finish.run();
+    }
+
+    /**
+     * 预先编码每个商品的 id 和类目: {@code 123,"category":"c7"}
+     */
+    private static byte[][] encodeItems(int items, int categories) {
+        byte[][] fragments = new byte[items][];
+        for (int item = 0; item < items; item++) {
+            int category = (int) Math.floorMod(HyperLogLog.hash(item), (long) categories);
+            fragments[item] = ascii(item + ",\"category\":\"c" + category + "\"");
+        }
+        return fragments;
+    }
+
+    private static int encode(byte[] buffer, int userId, byte[] item, byte[] action, long ts) {
+        int position = put(buffer, 0, USER_ID);
+        position = putLong(buffer, position, userId);
+        position = put(buffer, position, ITEM_ID);
+        position = put(buffer, position, item);
+        position = put(buffer, position, ACTION);
+        position = put(buffer, position, action);
+        position = put(buffer, position, TS);
+        position = putLong(buffer, position, ts);
+        buffer[position++] = '}';
+        return position;
+    }
+
+    private static int put(byte[] buffer, int position, byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        return position + bytes.length;
+    }
+
+    // 只用于非负数
+    private static int putLong(byte[] buffer, int position, long value) {
+        int digits = 1;
+        for (long v = value / 10; v > 0; v /= 10) {
+            digits++;
+        }
+        for (int i = position + digits - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        return position + digits;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private interface Output extends AutoCloseable {
+
+        /**
+         * 每个生成线程一个 Writer
+         */
+        Writer newWriter();
+
+        long failed();
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private interface Writer {
+
+        void write(byte[] buffer, int length);
+
+        void flush();
+    }
+
+    private static class KafkaOutput implements Output {
+
+        private final KafkaProducer<byte[], byte[]> producer;
+        private final String topic;
+        private final AtomicLong failed = new AtomicLong();
+
+        KafkaOutput(ParameterTool parameterTool) {
+            Properties props = new Properties();
+            props.setProperty(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, parameterTool.get("brokers", Constants.KAFKA_BOOTSTRAP_SERVER));
+            props.setProperty(ProducerConfig.ACKS_CONFIG, parameterTool.get("acks", "1"));
+            props.setProperty(ProducerConfig.BATCH_SIZE_CONFIG, String.valueOf(parameterTool.getInt("batch-size-kb", 256) * 1024));
+            props.setProperty(ProducerConfig.LINGER_MS_CONFIG, parameterTool.get("linger-ms", "20"));
+            props.setProperty(ProducerConfig.COMPRESSION_TYPE_CONFIG, parameterTool.get("compression", "lz4"));
+            props.setProperty(ProducerConfig.BUFFER_MEMORY_CONFIG, String.valueOf(256L * 1024 * 1024));
+            props.setProperty(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+            props.setProperty(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, ByteArraySerializer.class.getName());
+            this.producer = new KafkaProducer<>(props);
+            this.topic = parameterTool.get("kafka-topic", Constants.TOPIC);
+        }
+
+        @Override
+        public Writer newWriter() {
+            return new Writer() {
+                @Override
+                public void write(byte[] buffer, int length) {
+                    // 异步发送, 由 producer 按 batch-size-kb 和 linger-ms 攒批; 缓冲区满时 send 阻塞, 相当于限速
+                    producer.send(new ProducerRecord<>(topic, Arrays.copyOf(buffer, length)), (metadata, exception) -> {
+                        if (exception != null) {
+                            failed.incrementAndGet();
+                        }
+                    });
+                }
+
+                @Override
+                public void flush() {
+                }
+            };
+        }
+
+        @Override
+        public long failed() {
+            return failed.get();
+        }
+
+        @Override
+        public void close() {
+            producer.close();
+        }
+    }
+
+    private static class FileOutput implements Output {
+
+        private final OutputStream out;
+        private final AtomicLong failed = new AtomicLong();
+
+        FileOutput(String path) throws IOException {
+            this.out = new BufferedOutputStream(new FileOutputStream(path), 1 << 20);
+        }
+
+        @Override
+        public Writer newWriter() {
+            // 每个线程先写入自己的批次, 满了再加锁写文件, 每行一条消息
+            return new Writer() {
+                private final byte[] batch = new byte[1 << 16];
+                private int position;
+                private int count;
+
+                @Override
+                public void write(byte[] buffer, int length) {
+                    if (position + length + 1 > batch.length) {
+                        flush();
+                    }
+                    System.arraycopy(buffer, 0, batch, position, length);
+                    position += length;
+                    batch[position++] = '\n';
+                    count++;
+                }
+
+                @Override
+                public void flush() {
+                    synchronized (out) {
+                        try {
+                            out.write(batch, 0, position);
+                        } catch (IOException e) {
+                            failed.addAndGet(count);
+                        }
+                    }
+                    position = 0;
+                    count = 0;
+                }
+            };
+        }
+
+        @Override
+        public long failed() {
+            return failed.get();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.geekbang.flink.project;
+
+import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.MapStateDescriptor;
+import org.apache.flink.api.common.state.ValueState;
+import org.apache.flink.api.common.state.ValueStateDescriptor;
+import org.apache.flink.api.java.tuple.Tuple3;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.TimerService;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+/**
+ * 第二阶段: 按窗口结束时间和单元格 ({@link PvUvPartial#cellKey()}) 合并各个用户分桶的 PV/UV
+ *
+ * <p>每个桶只保留最新的一份结果, 所以同一个桶对同一窗口的更新不会被重复计算.
+ * 事件时间模式下, 第一阶段在 watermark 越过窗口结束时间时输出, 这里在同一个 watermark
+ * 到达时输出合并结果, 之后到达的更新在下一个 watermark 合并输出一次.
+ * 处理时间模式下在窗口结束 mergeDelay 毫秒后输出, 之后到达的更新立即输出.
+ * 合并状态在窗口结束 retention 毫秒后清理, 清理前会先输出尚未输出的更新.
+ */
+public class PvUvMergeFunction extends KeyedProcessFunction<Tuple3<Long, String, String>, PvUvPartial, PvUvResult> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final boolean eventTime;
+    private final long mergeDelay;
+    private final long retention;
+
+    private transient MapState<Integer, PvUvPartial> partials;
+    private transient ValueState<Boolean> fired;
+    private transient ValueState<Boolean> dirty;
+
+    public PvUvMergeFunction(boolean eventTime, long mergeDelay, long retention) {
+        this.eventTime = eventTime;
+        this.mergeDelay = eventTime ? 0L : mergeDelay;
+        this.retention = Math.max(retention, this.mergeDelay + 1);
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        partials = getRuntimeContext().getMapState(
+                new MapStateDescriptor<>("partials", Integer.class, PvUvPartial.class));
+        fired = getRuntimeContext().getState(new ValueStateDescriptor<>("fired", Boolean.class));
+        dirty = getRuntimeContext().getState(new ValueStateDescriptor<>("dirty", Boolean.class));
+    }
+
+    @Override
+    public void processElement(PvUvPartial partial, Context ctx, Collector<PvUvResult> out) throws Exception {
+        partials.put(partial.getBucket(), partial);
+        TimerService timerService = ctx.timerService();
+        if (fired.value() == null) {
+            registerTimer(timerService, partial.getWindowEnd() + mergeDelay);
+            registerTimer(timerService, partial.getWindowEnd() + retention);
+        } else if (eventTime) {
+            dirty.update(true);
+            timerService.registerEventTimeTimer(timerService.currentWatermark() + 1);
+        } else {
+            emit(ctx.getCurrentKey(), out);
+        }
+    }
+
+    private void registerTimer(TimerService timerService, long time) {
+        if (eventTime) {
+            timerService.registerEventTimeTimer(time);
+        } else {
+            timerService.registerProcessingTimeTimer(time);
+        }
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<PvUvResult> out) throws Exception {
+        Tuple3<Long, String, String> cell = ctx.getCurrentKey();
+        if (partials.isEmpty()) {
+            fired.clear();
+            dirty.clear();
+            return;
+        }
+        // 延迟更新的定时器可能和清理定时器是同一个时间点, 清理前先输出尚未输出的更新
+        if (fired.value() == null || dirty.value() != null) {
+            emit(cell, out);
+            fired.update(true);
+            dirty.clear();
+        }
+        if (timestamp >= cell.f0 + retention) {
+            partials.clear();
+            fired.clear();
+        }
+    }
+
+    private void emit(Tuple3<Long, String, String> cell, Collector<PvUvResult> out) throws Exception {
+        long pv = 0;
+        long uv = 0;
+        long windowStart = 0;
+        for (PvUvPartial partial : partials.values()) {
+            pv += partial.getPv();
+            uv += partial.getUv();
+            windowStart = partial.getWindowStart();
+        }
+        out.collect(new PvUvResult(windowStart, cell.f0, cell.f1, cell.f2, pv, uv));
+    }
+}
@@ -0,0 +1,34 @@
+package com.geekbang.flink.project;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.apache.flink.api.java.tuple.Tuple3;
+
+/**
+ * 一个用户分桶在一个窗口内某个 类目 × 行为 单元格的 PV 和 UV. 用户按 userId 分桶, 各个桶的用户互不相交,
+ * 所以窗口的 UV 等于各个桶 UV 之和, 全局合并时不需要传输去重结构
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PvUvPartial {
+    private int bucket;
+    private long windowStart;
+    private long windowEnd;
+    private long pv;
+    private long uv;
+    private String category;
+    private String action;
+
+    /**
+     * 第二阶段的 key: 同一窗口同一单元格的各个分桶合并在一起. 用元组而不是拼接字符串, 取值中的分隔符不会造成冲突
+     */
+    public Tuple3<Long, String, String> cellKey() {
+        return Tuple3.of(windowEnd, category, action);
+    }
+
+    public static int bucketOf(int userId, int buckets) {
+        return (int) Math.floorMod(HyperLogLog.hash(userId), (long) buckets);
+    }
+}
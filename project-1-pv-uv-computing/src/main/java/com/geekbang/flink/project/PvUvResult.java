@@ -0,0 +1,20 @@
+package com.geekbang.flink.project;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 一个窗口内某个 类目 × 行为 单元格的 PV 和 UV, 汇总行的类目或行为为 {@link Constants#TOTAL_SCENE_ID}
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PvUvResult {
+    private long windowStart;
+    private long windowEnd;
+    private String category;
+    private String action;
+    private long pv;
+    private long uv;
+}
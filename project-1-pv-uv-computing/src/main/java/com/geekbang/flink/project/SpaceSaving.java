@@ -0,0 +1,171 @@
+package com.geekbang.flink.project;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-Saving 热点 (heavy hitter) 统计
+ *
+ * <p>最多跟踪 capacity 个 key, 内存与不同 key 的数量无关. 已满时新的 key 替换当前计数最小的 key,
+ * 并继承它的计数作为误差上限, 所以每个 key 的计数只会高估, 且高估不超过 总数 / capacity.
+ * 出现次数超过 总数 / capacity 的 key 一定在结果中. 计数用按数组下标组织的小顶堆维护, 每次更新 O(log capacity).
+ */
+public class SpaceSaving implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final int capacity;
+    private int size;
+    private long total;
+    private final String[] keys;
+    private final long[] counts;
+    private final long[] errors;
+    // key -> 堆中的下标
+    private final Map<String, Integer> index;
+
+    public SpaceSaving() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Space-Saving capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        this.keys = new String[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.index = new HashMap<>(capacity * 2);
+    }
+
+    public void add(String key) {
+        add(key, 1L, 0L);
+    }
+
+    private void add(String key, long count, long error) {
+        total += count;
+        Integer slot = index.get(key);
+        if (slot != null) {
+            counts[slot] += count;
+            errors[slot] += error;
+            siftDown(slot);
+        } else if (size < capacity) {
+            keys[size] = key;
+            counts[size] = count;
+            errors[size] = error;
+            index.put(key, size);
+            siftUp(size++);
+        } else {
+            // 替换计数最小的 key, 被替换的计数计入误差
+            index.remove(keys[0]);
+            keys[0] = key;
+            errors[0] = counts[0] + error;
+            counts[0] += count;
+            index.put(key, 0);
+            siftDown(0);
+        }
+    }
+
+    /**
+     * 合并另一个 sketch: 只在一方出现的 key, 按另一方的最小计数补齐计数和误差,
+     * 合并后误差上限为两者之和
+     */
+    public void merge(SpaceSaving other) {
+        long thisMin = size < capacity ? 0L : counts[0];
+        long otherMin = other.size < other.capacity ? 0L : other.counts[0];
+        Map<String, long[]> merged = new HashMap<>((size + other.size) * 2);
+        for (int i = 0; i < size; i++) {
+            merged.put(keys[i], new long[]{counts[i] + otherMin, errors[i] + otherMin});
+        }
+        for (int i = 0; i < other.size; i++) {
+            long[] entry = merged.get(other.keys[i]);
+            if (entry == null) {
+                merged.put(other.keys[i], new long[]{other.counts[i] + thisMin, other.errors[i] + thisMin});
+            } else {
+                entry[0] += other.counts[i] - otherMin;
+                entry[1] += other.errors[i] - otherMin;
+            }
+        }
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(merged.entrySet());
+        entries.sort(Comparator.comparingLong((Map.Entry<String, long[]> e) -> e.getValue()[0]).reversed());
+
+        long mergedTotal = total + other.total;
+        size = 0;
+        index.clear();
+        for (int i = 0; i < entries.size() && i < capacity; i++) {
+            Map.Entry<String, long[]> entry = entries.get(i);
+            keys[size] = entry.getKey();
+            counts[size] = entry.getValue()[0];
+            errors[size] = entry.getValue()[1];
+            index.put(entry.getKey(), size);
+            siftUp(size++);
+        }
+        total = mergedTotal;
+    }
+
+    /**
+     * 计数最大的 n 个 key, 按计数降序
+     */
+    public List<HeavyHitter> top(int n) {
+        List<HeavyHitter> hitters = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hitters.add(new HeavyHitter(keys[i], counts[i], errors[i]));
+        }
+        hitters.sort(Comparator.comparingLong(HeavyHitter::getCount).reversed());
+        return hitters.size() > n ? new ArrayList<>(hitters.subList(0, n)) : hitters;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (counts[parent] <= counts[i]) {
+                return;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int smallest = i;
+            int left = 2 * i + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == i) {
+                return;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+        long error = errors[i];
+        errors[i] = errors[j];
+        errors[j] = error;
+        index.put(keys[i], i);
+        index.put(keys[j], j);
+    }
+}
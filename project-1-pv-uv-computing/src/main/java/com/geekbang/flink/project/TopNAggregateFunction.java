@@ -0,0 +1,78 @@
+package com.geekbang.flink.project;
+
+import org.apache.flink.api.common.functions.AggregateFunction;
+import org.apache.flink.streaming.api.functions.windowing.ProcessWindowFunction;
+import org.apache.flink.streaming.api.windowing.windows.TimeWindow;
+import org.apache.flink.util.Collector;
+
+import java.util.List;
+
+/**
+ * 第一阶段: 每个 key 分桶在窗口内用一个 {@link SpaceSaving} 统计热点, 窗口结束时只输出前 n 个
+ */
+public class TopNAggregateFunction implements AggregateFunction<UserBehaviorEvent, SpaceSaving, List<HeavyHitter>> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final TopNDimension dimension;
+    private final int capacity;
+    private final int n;
+
+    public TopNAggregateFunction(TopNDimension dimension, int capacity, int n) {
+        if (capacity < n) {
+            throw new IllegalArgumentException("Sketch capacity " + capacity + " must not be smaller than top-n " + n);
+        }
+        this.dimension = dimension;
+        this.capacity = capacity;
+        this.n = n;
+    }
+
+    @Override
+    public SpaceSaving createAccumulator() {
+        return new SpaceSaving(capacity);
+    }
+
+    @Override
+    public SpaceSaving add(UserBehaviorEvent event, SpaceSaving sketch) {
+        String key = dimension.keyOf(event);
+        if (key != null) {
+            sketch.add(key);
+        }
+        return sketch;
+    }
+
+    @Override
+    public List<HeavyHitter> getResult(SpaceSaving sketch) {
+        return sketch.top(n);
+    }
+
+    @Override
+    public SpaceSaving merge(SpaceSaving a, SpaceSaving b) {
+        a.merge(b);
+        return a;
+    }
+
+    /**
+     * 给每个桶的前 n 个热点加上维度, 分桶和窗口信息
+     */
+    public static class ToPartial extends ProcessWindowFunction<List<HeavyHitter>, TopNPartial, Integer, TimeWindow> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final TopNDimension dimension;
+
+        public ToPartial(TopNDimension dimension) {
+            this.dimension = dimension;
+        }
+
+        @Override
+        public void process(Integer bucket, Context context, Iterable<List<HeavyHitter>> results, Collector<TopNPartial> out) {
+            TimeWindow window = context.window();
+            for (List<HeavyHitter> hitters : results) {
+                if (!hitters.isEmpty()) {
+                    out.collect(new TopNPartial(dimension, bucket, window.getStart(), window.getEnd(), hitters));
+                }
+            }
+        }
+    }
+}
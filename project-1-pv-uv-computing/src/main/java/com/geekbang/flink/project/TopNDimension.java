@@ -0,0 +1,26 @@
+package com.geekbang.flink.project;
+
+/**
+ * Top-N 统计的维度
+ */
+public enum TopNDimension {
+    ITEM,
+    CATEGORY;
+
+    public String keyOf(UserBehaviorEvent event) {
+        switch (this) {
+            case CATEGORY:
+                return event.getCategory();
+            case ITEM:
+            default:
+                return String.valueOf(event.getItemId());
+        }
+    }
+
+    /**
+     * key 所在的分桶, 同一个 key 总在同一个桶, 各个桶的 key 互不相交
+     */
+    public static int bucketOf(String key, int buckets) {
+        return (int) Math.floorMod(HyperLogLog.hash(key.hashCode()), (long) buckets);
+    }
+}
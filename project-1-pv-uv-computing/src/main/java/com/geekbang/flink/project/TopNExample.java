@@ -0,0 +1,74 @@
+package com.geekbang.flink.project;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
+import org.apache.flink.api.java.utils.ParameterTool;
+import org.apache.flink.streaming.api.TimeCharacteristic;
+import org.apache.flink.streaming.api.datastream.DataStream;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
+import org.apache.flink.streaming.api.windowing.assigners.TumblingEventTimeWindows;
+import org.apache.flink.streaming.api.windowing.time.Time;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer010;
+
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * 每个窗口内访问最多的商品和类目
+ *
+ * <p>第一阶段按 key 分桶, 每个桶在窗口内用容量固定的 Space-Saving sketch 统计, 内存只取决于
+ * 分桶数和 sketch 容量, 与不同商品的数量无关; 第二阶段按窗口合并各个桶的前 N 个输出全局前 N 个.
+ */
+@Slf4j
+public class TopNExample {
+
+    public static void main(String[] args) throws Exception {
+
+        final ParameterTool parameterTool = ParameterTool.fromArgs(args);
+        String kafkaTopic = parameterTool.get("kafka-topic", "default");
+        String brokers = parameterTool.get("brokers", "node01:9092");
+        System.out.printf("Reading from kafka topic %s @ %s\n", kafkaTopic, brokers);
+        System.out.println();
+        Properties kafkaProps = new Properties();
+        kafkaProps.setProperty("bootstrap.servers", brokers);
+        FlinkKafkaConsumer010<UserBehaviorEvent> kafka = new FlinkKafkaConsumer010<>(kafkaTopic, new UserBehaviorEventSchema(), kafkaProps);
+        kafka.setStartFromLatest();
+        kafka.setCommitOffsetsOnCheckpoints(false);
+        kafka.assignTimestampsAndWatermarks(
+                WatermarkStrategy
+                        .<UserBehaviorEvent>forBoundedOutOfOrderness(Duration.ofMillis(parameterTool.getLong("max-out-of-orderness-ms", 2000L)))
+                        .withTimestampAssigner((event, recordTimestamp) -> event.getTs())
+                        .withIdleness(Duration.ofMillis(parameterTool.getLong("idle-timeout-ms", 10000L))));
+
+        StreamExecutionEnvironment env = StreamExecutionEnvironment.getExecutionEnvironment();
+        env.setStreamTimeCharacteristic(TimeCharacteristic.EventTime);
+        DataStream<UserBehaviorEvent> events = env.addSource(kafka);
+
+        // 窗口大小, 输出的热点个数, 每个桶的 sketch 容量 (计数误差不超过 桶内事件数 / 容量) 和分桶数
+        long windowSize = parameterTool.getLong("window-size-ms", Time.minutes(1).toMilliseconds());
+        int topN = parameterTool.getInt("top-n", 10);
+        int capacity = parameterTool.getInt("sketch-capacity", SpaceSaving.DEFAULT_CAPACITY);
+        int buckets = parameterTool.getInt("topn-buckets", 32);
+
+        for (TopNDimension dimension : TopNDimension.values()) {
+            topN(events, dimension, windowSize, topN, capacity, buckets)
+                    .print()
+                    .name("Top " + topN + " " + dimension.name().toLowerCase())
+                    .setParallelism(1);
+        }
+
+        env.execute(parameterTool.get("appName", "TopNExample"));
+
+    }
+
+    private static DataStream<TopNItem> topN(DataStream<UserBehaviorEvent> events, TopNDimension dimension,
+                                             long windowSize, int topN, int capacity, int buckets) {
+        return events
+                .filter(event -> dimension.keyOf(event) != null)
+                .keyBy(event -> TopNDimension.bucketOf(dimension.keyOf(event), buckets))
+                .window(TumblingEventTimeWindows.of(Time.milliseconds(windowSize)))
+                .aggregate(new TopNAggregateFunction(dimension, capacity, topN), new TopNAggregateFunction.ToPartial(dimension))
+                .keyBy(TopNPartial::getWindowEnd)
+                .process(new TopNMergeFunction(topN));
+    }
+}
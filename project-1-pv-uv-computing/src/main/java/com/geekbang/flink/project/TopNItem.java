@@ -0,0 +1,21 @@
+package com.geekbang.flink.project;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 窗口内某个维度排名第 rank (从 1 开始) 的热点
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TopNItem {
+    private TopNDimension dimension;
+    private long windowStart;
+    private long windowEnd;
+    private int rank;
+    private String key;
+    private long count;
+    private long error;
+}
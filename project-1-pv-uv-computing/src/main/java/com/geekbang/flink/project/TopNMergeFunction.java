@@ -0,0 +1,61 @@
+package com.geekbang.flink.project;
+
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.streaming.api.functions.KeyedProcessFunction;
+import org.apache.flink.util.Collector;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 第二阶段: 按窗口结束时间合并各个 key 分桶的前 n 个热点, 输出全局前 n 个
+ *
+ * <p>第一阶段的结果时间戳为窗口的最大时间戳 (windowEnd - 1), 同一个 watermark 越过它时,
+ * 所有桶的结果都已到达, 此时排序输出并清理状态
+ */
+public class TopNMergeFunction extends KeyedProcessFunction<Long, TopNPartial, TopNItem> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int n;
+
+    private transient ListState<TopNPartial> partials;
+
+    public TopNMergeFunction(int n) {
+        this.n = n;
+    }
+
+    @Override
+    public void open(Configuration parameters) {
+        partials = getRuntimeContext().getListState(new ListStateDescriptor<>("partials", TopNPartial.class));
+    }
+
+    @Override
+    public void processElement(TopNPartial partial, Context ctx, Collector<TopNItem> out) throws Exception {
+        partials.add(partial);
+        ctx.timerService().registerEventTimeTimer(partial.getWindowEnd() - 1);
+    }
+
+    @Override
+    public void onTimer(long timestamp, OnTimerContext ctx, Collector<TopNItem> out) throws Exception {
+        List<HeavyHitter> hitters = new ArrayList<>();
+        TopNPartial any = null;
+        for (TopNPartial partial : partials.get()) {
+            hitters.addAll(partial.getHitters());
+            any = partial;
+        }
+        partials.clear();
+        if (any == null) {
+            return;
+        }
+        hitters.sort(Comparator.comparingLong(HeavyHitter::getCount).reversed());
+        for (int i = 0; i < hitters.size() && i < n; i++) {
+            HeavyHitter hitter = hitters.get(i);
+            out.collect(new TopNItem(any.getDimension(), any.getWindowStart(), any.getWindowEnd(),
+                    i + 1, hitter.getKey(), hitter.getCount(), hitter.getError()));
+        }
+    }
+}
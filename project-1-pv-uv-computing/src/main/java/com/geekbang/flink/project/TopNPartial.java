@@ -0,0 +1,22 @@
+package com.geekbang.flink.project;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 一个 key 分桶在一个窗口内的前 N 个热点. 各个桶的 key 互不相交,
+ * 所以全局前 N 一定在各个桶的前 N 之中, 全局合并时只需要传输每个桶的前 N 个
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class TopNPartial {
+    private TopNDimension dimension;
+    private int bucket;
+    private long windowStart;
+    private long windowEnd;
+    private List<HeavyHitter> hitters;
+}
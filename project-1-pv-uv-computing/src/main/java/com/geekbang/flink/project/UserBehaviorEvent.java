@@ -8,10 +8,10 @@ import lombok.*;
 @AllArgsConstructor
 @NoArgsConstructor
 public class UserBehaviorEvent {
-    private Integer userId;
-    private Integer itemId;
+    private int userId;
+    private int itemId;
     private String category;
     private String clientIp;
     private String action;
-    private Long ts;
+    private long ts;
 }
@@ -17,26 +17,143 @@
 
 package com.geekbang.flink.project;
 
-import com.alibaba.fastjson.JSON;
 import org.apache.flink.api.common.serialization.DeserializationSchema;
 import org.apache.flink.api.common.serialization.SerializationSchema;
 import org.apache.flink.api.common.typeinfo.TypeInformation;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
-
+/**
+ * UserBehaviorEvent 的 JSON 编解码, 序列化和反序列化使用同一格式:
+ * {@code {"userId":1,"itemId":2,"category":"c1","clientIp":"127.0.0.1","action":"click","ts":1600000000000}}
+ *
+ * <p>直接在字节上解析, 不经过反射和中间的 JSON 对象, 数字字段直接解析为 int/long 不装箱.
+ * 字段按上面的顺序优先匹配, 也接受其它顺序, 未知字段和 null 值会被跳过, 所以 fastjson 写出的消息同样可以读取.
+ * 序列化时非 ASCII 字符写成 \\uXXXX, 输出总是 ASCII.
+ */
 public class UserBehaviorEventSchema implements DeserializationSchema<UserBehaviorEvent>, SerializationSchema<UserBehaviorEvent> {
 
     private static final long serialVersionUID = 6154188370181669758L;
 
+    private static final int USER_ID = 0;
+    private static final int ITEM_ID = 1;
+    private static final int CATEGORY = 2;
+    private static final int CLIENT_IP = 3;
+    private static final int ACTION = 4;
+    private static final int TS = 5;
+
+    private static final byte[][] FIELDS = {
+            ascii("userId"), ascii("itemId"), ascii("category"), ascii("clientIp"), ascii("action"), ascii("ts")
+    };
+
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    // 序列化缓冲区, 每个 sink 子任务一个 schema 实例
+    private transient byte[] buffer;
+    private transient int position;
+
     @Override
     public byte[] serialize(UserBehaviorEvent event) {
-        return event.toString().getBytes();
+        if (buffer == null) {
+            buffer = new byte[256];
+        }
+        position = 0;
+        writeByte('{');
+        writeKey(USER_ID);
+        writeLong(event.getUserId());
+        writeByte(',');
+        writeKey(ITEM_ID);
+        writeLong(event.getItemId());
+        if (event.getCategory() != null) {
+            writeByte(',');
+            writeKey(CATEGORY);
+            writeString(event.getCategory());
+        }
+        if (event.getClientIp() != null) {
+            writeByte(',');
+            writeKey(CLIENT_IP);
+            writeString(event.getClientIp());
+        }
+        if (event.getAction() != null) {
+            writeByte(',');
+            writeKey(ACTION);
+            writeString(event.getAction());
+        }
+        writeByte(',');
+        writeKey(TS);
+        writeLong(event.getTs());
+        writeByte('}');
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void writeKey(int field) {
+        byte[] name = FIELDS[field];
+        ensureCapacity(name.length + 3);
+        buffer[position++] = '"';
+        System.arraycopy(name, 0, buffer, position, name.length);
+        position += name.length;
+        buffer[position++] = '"';
+        buffer[position++] = ':';
+    }
+
+    private void writeLong(long value) {
+        ensureCapacity(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+        } else {
+            value = -value;
+        }
+        // 按负数处理, Long.MIN_VALUE 也不会溢出
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+    }
+
+    private void writeString(String value) {
+        ensureCapacity(value.length() * 6 + 2);
+        buffer[position++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                buffer[position++] = '\\';
+                buffer[position++] = (byte) c;
+            } else if (c >= 0x20 && c < 0x7f) {
+                buffer[position++] = (byte) c;
+            } else {
+                buffer[position++] = '\\';
+                buffer[position++] = 'u';
+                buffer[position++] = HEX[(c >>> 12) & 0xf];
+                buffer[position++] = HEX[(c >>> 8) & 0xf];
+                buffer[position++] = HEX[(c >>> 4) & 0xf];
+                buffer[position++] = HEX[c & 0xf];
+            }
+        }
+        buffer[position++] = '"';
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) c;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
     }
 
     @Override
     public UserBehaviorEvent deserialize(byte[] message) throws IOException {
-        return JSON.parseObject(message, UserBehaviorEvent.class);
+        return new Parser(message).parse();
     }
 
     @Override
@@ -48,4 +165,290 @@ public class UserBehaviorEventSchema implements DeserializationSchema<UserBehavi
     public TypeInformation<UserBehaviorEvent> getProducedType() {
         return TypeInformation.of(UserBehaviorEvent.class);
     }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * 单条消息的解析器, 只支持 UserBehaviorEvent 需要的扁平 JSON 对象
+     */
+    private static final class Parser {
+
+        private final byte[] bytes;
+        private int position;
+
+        Parser(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        UserBehaviorEvent parse() throws IOException {
+            UserBehaviorEvent event = new UserBehaviorEvent();
+            expect('{');
+            if (peek() == '}') {
+                position++;
+                return event;
+            }
+            int expected = 0;
+            while (true) {
+                int field = readKey(expected);
+                expect(':');
+                if (peek() == 'n') {
+                    readLiteral("null");
+                } else {
+                    switch (field) {
+                        case USER_ID:
+                            event.setUserId(readInt());
+                            break;
+                        case ITEM_ID:
+                            event.setItemId(readInt());
+                            break;
+                        case CATEGORY:
+                            event.setCategory(readString());
+                            break;
+                        case CLIENT_IP:
+                            event.setClientIp(readString());
+                            break;
+                        case ACTION:
+                            event.setAction(readString());
+                            break;
+                        case TS:
+                            event.setTs(readLong());
+                            break;
+                        default:
+                            skipValue();
+                    }
+                }
+                expected = field + 1;
+                byte next = next();
+                if (next == '}') {
+                    return event;
+                }
+                if (next != ',') {
+                    throw error("',' or '}'");
+                }
+            }
+        }
+
+        /**
+         * 读取字段名, 返回字段下标, 未知字段返回 -1. 先按 expected 位置比较, 不匹配再比较其它字段
+         */
+        private int readKey(int expected) throws IOException {
+            expect('"');
+            int start = position;
+            while (position < bytes.length && bytes[position] != '"') {
+                if (bytes[position] == '\\') {
+                    position++;
+                }
+                position++;
+            }
+            if (position >= bytes.length) {
+                throw error("'\"'");
+            }
+            int length = position - start;
+            position++;
+            if (expected < FIELDS.length && matches(FIELDS[expected], start, length)) {
+                return expected;
+            }
+            for (int i = 0; i < FIELDS.length; i++) {
+                if (matches(FIELDS[i], start, length)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private boolean matches(byte[] name, int start, int length) {
+            if (name.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (bytes[start + i] != name[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int readInt() throws IOException {
+            int start = position;
+            long value = readLong();
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                position = start;
+                throw error("int");
+            }
+            return (int) value;
+        }
+
+        /**
+         * 只接受整数, 超出 long 范围以及带小数或指数的数字直接报错, 不会静默截断
+         */
+        private long readLong() throws IOException {
+            skipWhitespace();
+            boolean quoted = position < bytes.length && bytes[position] == '"';
+            if (quoted) {
+                position++;
+            }
+            boolean negative = position < bytes.length && bytes[position] == '-';
+            if (negative) {
+                position++;
+            }
+            // 和 Long.parseLong 一样按负数累加, Long.MIN_VALUE 也可以解析
+            long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+            int start = position;
+            long value = 0;
+            while (position < bytes.length && bytes[position] >= '0' && bytes[position] <= '9') {
+                int digit = bytes[position] - '0';
+                if (value < limit / 10 || value * 10 < limit + digit) {
+                    throw error("number in long range");
+                }
+                value = value * 10 - digit;
+                position++;
+            }
+            if (position == start) {
+                throw error("number");
+            }
+            if (position < bytes.length && (bytes[position] == '.' || bytes[position] == 'e' || bytes[position] == 'E')) {
+                throw error("integer without fraction or exponent");
+            }
+            if (quoted) {
+                expect('"');
+            }
+            return negative ? value : -value;
+        }
+
+        private String readString() throws IOException {
+            expect('"');
+            int start = position;
+            while (position < bytes.length && bytes[position] != '"' && bytes[position] != '\\') {
+                position++;
+            }
+            if (position < bytes.length && bytes[position] == '"') {
+                // 没有转义字符时直接按 UTF-8 解码
+                return new String(bytes, start, position++ - start, StandardCharsets.UTF_8);
+            }
+            StringBuilder value = new StringBuilder(new String(bytes, start, position - start, StandardCharsets.UTF_8));
+            while (position < bytes.length) {
+                byte b = bytes[position++];
+                if (b == '"') {
+                    return value.toString();
+                }
+                if (b != '\\') {
+                    int runStart = position - 1;
+                    while (position < bytes.length && bytes[position] != '"' && bytes[position] != '\\') {
+                        position++;
+                    }
+                    value.append(new String(bytes, runStart, position - runStart, StandardCharsets.UTF_8));
+                    continue;
+                }
+                if (position >= bytes.length) {
+                    break;
+                }
+                byte escaped = bytes[position++];
+                switch (escaped) {
+                    case 'b':
+                        value.append('\b');
+                        break;
+                    case 'f':
+                        value.append('\f');
+                        break;
+                    case 'n':
+                        value.append('\n');
+                        break;
+                    case 'r':
+                        value.append('\r');
+                        break;
+                    case 't':
+                        value.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > bytes.length) {
+                            throw error("4 hex digits");
+                        }
+                        value.append((char) Integer.parseInt(new String(bytes, position, 4, StandardCharsets.US_ASCII), 16));
+                        position += 4;
+                        break;
+                    default:
+                        value.append((char) escaped);
+                }
+            }
+            throw error("'\"'");
+        }
+
+        /**
+         * 跳过未知字段的值, 包括嵌套的对象和数组
+         */
+        private void skipValue() throws IOException {
+            byte first = peek();
+            if (first == '"') {
+                readString();
+                return;
+            }
+            if (first != '{' && first != '[') {
+                while (position < bytes.length && bytes[position] != ',' && bytes[position] != '}'
+                        && bytes[position] != ']' && bytes[position] > ' ') {
+                    position++;
+                }
+                return;
+            }
+            int depth = 0;
+            while (position < bytes.length) {
+                byte b = bytes[position];
+                if (b == '"') {
+                    readString();
+                    continue;
+                }
+                position++;
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if ((b == '}' || b == ']') && --depth == 0) {
+                    return;
+                }
+            }
+            throw error("end of value");
+        }
+
+        private void readLiteral(String literal) throws IOException {
+            skipWhitespace();
+            for (int i = 0; i < literal.length(); i++) {
+                if (position >= bytes.length || bytes[position++] != literal.charAt(i)) {
+                    throw error(literal);
+                }
+            }
+        }
+
+        private void expect(char c) throws IOException {
+            if (next() != c) {
+                throw error("'" + c + "'");
+            }
+        }
+
+        private byte next() throws IOException {
+            skipWhitespace();
+            if (position >= bytes.length) {
+                throw error("more input");
+            }
+            return bytes[position++];
+        }
+
+        private byte peek() throws IOException {
+            skipWhitespace();
+            if (position >= bytes.length) {
+                throw error("more input");
+            }
+            return bytes[position];
+        }
+
+        private void skipWhitespace() {
+            while (position < bytes.length && (bytes[position] == ' ' || bytes[position] == '\t'
+                    || bytes[position] == '\n' || bytes[position] == '\r')) {
+                position++;
+            }
+        }
+
+        private IOException error(String expected) {
+            return new IOException("Malformed UserBehaviorEvent at byte " + position + ", expected " + expected + ": "
+                    + new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
 }
@@ -1,32 +1,27 @@
 package com.geekbang.flink.project;
 
-import com.alibaba.fastjson.JSON;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.websocket.*;
 import java.io.IOException;
 import java.net.URI;
-import java.net.URISyntaxException;
-import java.util.HashMap;
 
 /**
  * websocket客户端
+ *
+ * <p>不会自动重连: 由调用方根据 {@link #isOpen()} 决定何时调用 {@link #connect()}, 以便控制退避
  */
 @ClientEndpoint
 @Slf4j
 public class WebSocketClientUtils {
 
     //会话
-    private Session session;
-    private URI uri;
+    private volatile Session session;
+    private final URI uri;
 
     //构造函数
     public WebSocketClientUtils(String uri) {
-        try {
-            this.uri = new URI(uri);
-        } catch (URISyntaxException e) {
-            log.error("Websocket的地址错误", e);
-        }
+        this.uri = URI.create(uri);
     }
 
     @OnOpen
@@ -37,7 +32,7 @@ public class WebSocketClientUtils {
 
     @OnMessage
     public void onMessage(String message) {
-        log.info("Websocket接收信息:" + message);
+        log.debug("Websocket接收信息:" + message);
     }
 
     @OnClose
@@ -50,32 +45,36 @@ public class WebSocketClientUtils {
         log.error("Websocket报错", t);
     }
 
-    //初始化
-    public void init() {
-        WebSocketContainer conmtainer = ContainerProvider.getWebSocketContainer();
+    //建立连接, 失败时抛出异常
+    public void connect() throws IOException {
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
         try {
-            conmtainer.connectToServer(this, uri);
-        } catch (Exception e) {
-            log.error("Websocket创建报错");
+            this.session = container.connectToServer(this, uri);
+        } catch (DeploymentException e) {
+            throw new IOException("Websocket连接失败: " + uri, e);
         }
     }
 
-    //发送字符串
-    public void send(String message) {
-        if (session == null || !session.isOpen()) {
-            log.error("Websocket状态异常,不能发送信息 - 尝试稍后连接");
-            init();
-        } else {
-            this.session.getAsyncRemote().sendText(message);
+    public boolean isOpen() {
+        Session current = session;
+        return current != null && current.isOpen();
+    }
+
+    //同步发送字符串, 会话不可用时抛出异常
+    public void send(String message) throws IOException {
+        if (!isOpen()) {
+            throw new IOException("Websocket会话未连接: " + uri);
         }
+        session.getBasicRemote().sendText(message);
     }
 
     //关闭连接
     public void close() {
-        if (this.session.isOpen()) {
+        Session current = session;
+        if (current != null && current.isOpen()) {
             try {
-                this.session.close();
-            } catch (IOException e) {
+                current.close();
+            } catch (IOException | RuntimeException e) {
                 log.error("Websocket关闭报错", e);
             }
         }
@@ -84,15 +83,10 @@ public class WebSocketClientUtils {
     //测试
     public static void main(String[] args) throws Exception {
         WebSocketClientUtils client = new WebSocketClientUtils("ws://localhost:5001/websocket/server");
-        client.init();
+        client.connect();
         int turn = 0;
         while (turn++ < 1000) {
-            HashMap<String, Object> websocketMessage = new HashMap<>();
-            websocketMessage.put("toGroupIds", new String[]{"html"});
-            websocketMessage.put("toClientIds", new String[]{});
-            websocketMessage.put("channel", "test_data_alert");
-            websocketMessage.put("message", "23123123");
-            client.send(JSON.toJSONString(websocketMessage));
+            client.send("{\"toGroupIds\":[\"html\"],\"toClientIds\":[],\"channel\":\"test_data_alert\",\"message\":\"23123123\"}");
             log.info(String.valueOf(turn));
             Thread.sleep(1000);
         }
@@ -1,43 +1,170 @@
 package com.geekbang.flink.project;
 
-import com.alibaba.fastjson.JSON;
-import org.apache.flink.api.java.tuple.Tuple4;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.flink.configuration.Configuration;
+import org.apache.flink.metrics.Counter;
+import org.apache.flink.metrics.Gauge;
 import org.apache.flink.streaming.api.functions.sink.RichSinkFunction;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 
-public class WebsocketSink extends RichSinkFunction<Tuple4<Long, Long, Long, Integer>> {
+/**
+ * 把 PV/UV 结果推送到 websocket 看板
+ *
+ * <p>每个子任务有自己的连接和有界发送队列. invoke 只把结果放入队列, 队列满时直接丢弃并计数,
+ * 所以看板慢或者断开都不会反压作业. 后台线程把队列中最多 maxBatchSize 条结果拼成一个 JSON 数组发送,
+ * 连接断开后按指数退避 (最长 maxBackoffMs) 重连, 未发送成功的一批结果在重连后重发.
+ *
+ * <p>指标: websocketQueued (队列长度), websocketDropped (丢弃条数), websocketSent (发送条数)
+ */
+@Slf4j
+public class WebsocketSink extends RichSinkFunction<PvUvResult> {
 
-    //私有
-    private static WebSocketClientUtils webSocketClient;
-    private String wsUrl;
+    private static final long serialVersionUID = 1L;
+
+    private static final long INITIAL_BACKOFF_MS = 100L;
+
+    private final String wsUrl;
+    private final int queueCapacity;
+    private final int maxBatchSize;
+    private final long maxBackoffMs;
+
+    private transient BlockingQueue<String> queue;
+    private transient WebSocketClientUtils webSocketClient;
+    private transient Thread sender;
+    private transient volatile boolean running;
+
+    private transient Counter dropped;
+    private transient Counter sent;
 
     //构造函数
     public WebsocketSink(String wsUrl) {
+        this(wsUrl, 10000, 100, 30000L);
+    }
+
+    public WebsocketSink(String wsUrl, int queueCapacity, int maxBatchSize, long maxBackoffMs) {
         this.wsUrl = wsUrl;
+        this.queueCapacity = queueCapacity;
+        this.maxBatchSize = maxBatchSize;
+        this.maxBackoffMs = maxBackoffMs;
     }
 
     @Override
     public void open(Configuration parameters) throws Exception {
         super.open(parameters);
-        //websocket客户端
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        dropped = getRuntimeContext().getMetricGroup().counter("websocketDropped");
+        sent = getRuntimeContext().getMetricGroup().counter("websocketSent");
+        getRuntimeContext().getMetricGroup().gauge("websocketQueued", (Gauge<Integer>) () -> queue.size());
+
+        //websocket客户端, 每个子任务一个
         webSocketClient = new WebSocketClientUtils(wsUrl);
-        webSocketClient.init();
+        running = true;
+        sender = new Thread(this::sendLoop, "websocket-sink-" + getRuntimeContext().getIndexOfThisSubtask());
+        sender.setDaemon(true);
+        sender.start();
     }
 
     @Override
-    public void invoke(Tuple4<Long, Long, Long, Integer> result, Context context) throws Exception {
-        //websocket数据发送
-        if (result != null) {
-            Map<String, Object> output = new HashMap<>();
-            output.put("window_start", result.f0);
-            output.put("window_end", result.f1);
-            output.put("pv", result.f2);
-            output.put("uv", result.f3);
-            webSocketClient.send(JSON.toJSONString(output));
+    public void invoke(PvUvResult result, Context context) {
+        if (result != null && !queue.offer(toJson(result))) {
+            dropped.inc();
         }
     }
-}
 
+    static String toJson(PvUvResult result) {
+        // 类目和行为来自事件, 按 JSON 字符串转义
+        StringBuilder json = new StringBuilder(128)
+                .append("{\"window_start\":").append(result.getWindowStart())
+                .append(",\"window_end\":").append(result.getWindowEnd())
+                .append(",\"category\":");
+        appendString(json, result.getCategory());
+        json.append(",\"action\":");
+        appendString(json, result.getAction());
+        return json
+                .append(",\"pv\":").append(result.getPv())
+                .append(",\"uv\":").append(result.getUv())
+                .append('}')
+                .toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private void sendLoop() {
+        List<String> batch = new ArrayList<>(maxBatchSize);
+        long backoff = INITIAL_BACKOFF_MS;
+        while (running) {
+            try {
+                if (batch.isEmpty()) {
+                    String first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, maxBatchSize - 1);
+                }
+                if (!webSocketClient.isOpen()) {
+                    webSocketClient.connect();
+                }
+                webSocketClient.send(toJsonArray(batch));
+                sent.inc(batch.size());
+                batch.clear();
+                backoff = INITIAL_BACKOFF_MS;
+            } catch (IOException | RuntimeException e) {
+                // 握手失败等运行时异常也走重连, 否则发送线程退出后结果全部被丢弃
+                log.warn("Websocket发送失败, {} 毫秒后重连", backoff, e);
+                webSocketClient.close();
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                backoff = Math.min(backoff * 2, maxBackoffMs);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static String toJsonArray(List<String> batch) {
+        StringBuilder frame = new StringBuilder(batch.size() * 96).append('[');
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                frame.append(',');
+            }
+            frame.append(batch.get(i));
+        }
+        return frame.append(']').toString();
+    }
+
+    @Override
+    public void close() throws Exception {
+        running = false;
+        if (sender != null) {
+            sender.interrupt();
+            sender.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        if (webSocketClient != null) {
+            webSocketClient.close();
+        }
+        super.close();
+    }
+}
@@ -0,0 +1,43 @@
+package com.geekbang.flink.project;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Zipf 分布采样: 第 k 个 (从 0 开始) 元素的概率与 1 / (k + 1)^skew 成正比, skew = 0 时为均匀分布
+ *
+ * <p>预先计算累积分布, 采样是一次二分查找, 不同线程可以共享同一个实例
+ */
+public class ZipfDistribution {
+
+    private final int size;
+    private final double[] cdf;
+
+    public ZipfDistribution(int size, double skew) {
+        if (size <= 0 || skew < 0) {
+            throw new IllegalArgumentException("Invalid zipf distribution: size=" + size + ", skew=" + skew);
+        }
+        this.size = size;
+        if (skew == 0) {
+            this.cdf = null;
+            return;
+        }
+        this.cdf = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cdf[i] /= sum;
+        }
+    }
+
+    public int sample(Random random) {
+        if (cdf == null) {
+            return random.nextInt(size);
+        }
+        int index = Arrays.binarySearch(cdf, random.nextDouble());
+        return Math.min(index >= 0 ? index : -index - 1, size - 1);
+    }
+}
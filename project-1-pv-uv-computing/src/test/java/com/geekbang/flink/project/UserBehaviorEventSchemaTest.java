@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.project;
+
+import com.alibaba.fastjson.JSON;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class UserBehaviorEventSchemaTest {
+
+    private final UserBehaviorEventSchema schema = new UserBehaviorEventSchema();
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        UserBehaviorEvent event = new UserBehaviorEvent(
+                Integer.MIN_VALUE, Integer.MAX_VALUE, "类目\"1\\", "127.0.0.1", "click\n", Long.MIN_VALUE);
+        assertEquals(event, schema.deserialize(schema.serialize(event)));
+
+        UserBehaviorEvent withNulls = new UserBehaviorEvent(1, 2, null, null, null, 1600000000000L);
+        assertEquals(withNulls, schema.deserialize(schema.serialize(withNulls)));
+    }
+
+    @Test
+    public void testReadsFastjsonMessages() throws IOException {
+        // fastjson 按字段名排序输出, 和 serialize 的字段顺序不同
+        UserBehaviorEvent event = new UserBehaviorEvent(1, 2, "类目", "127.0.0.1", "buy", 1600000000000L);
+        assertEquals(event, deserialize(JSON.toJSONString(event)));
+        assertEquals(event, deserialize("{\"action\":\"buy\",\"category\":\"\\u7c7b\\u76ee\",\"clientIp\":\"127.0.0.1\","
+                + "\"extra\":{\"a\":[1,2]},\"itemId\":\"2\",\"ts\":1600000000000,\"userId\":1}"));
+    }
+
+    @Test
+    public void testRejectsNumbersThatDoNotFit() {
+        assertMalformed("{\"userId\":2147483648}");
+        assertMalformed("{\"itemId\":-2147483649}");
+        assertMalformed("{\"ts\":9223372036854775808}");
+        assertMalformed("{\"ts\":-92233720368547758080}");
+        assertMalformed("{\"userId\":1.5}");
+        assertMalformed("{\"ts\":1e3}");
+    }
+
+    @Test
+    public void testReadsLongBounds() throws IOException {
+        assertEquals(Long.MAX_VALUE, deserialize("{\"ts\":9223372036854775807}").getTs());
+        assertEquals(Long.MIN_VALUE, deserialize("{\"ts\":-9223372036854775808}").getTs());
+    }
+
+    private UserBehaviorEvent deserialize(String json) throws IOException {
+        return schema.deserialize(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void assertMalformed(String json) {
+        try {
+            deserialize(json);
+            fail("Expected " + json + " to be rejected");
+        } catch (IOException expected) {
+        }
+    }
+}
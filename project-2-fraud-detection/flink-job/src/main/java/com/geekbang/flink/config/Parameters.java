@@ -19,7 +19,6 @@
 package com.geekbang.flink.config;
 
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import org.apache.flink.api.java.utils.ParameterTool;
 
@@ -86,12 +85,24 @@ public class Parameters {
   //    source/sink types: kafka / pubsub / socket
   public static final Param<String> RULES_SOURCE = Param.string("rules-source", "SOCKET");
   public static final Param<String> TRANSACTIONS_SOURCE = Param.string("data-source", "GENERATOR");
+  //    transactions format for kafka / file sources: json / csv
+  public static final Param<String> DATA_FORMAT = Param.string("data-format", "JSON");
   public static final Param<String> ALERTS_SINK = Param.string("alerts-sink", "STDOUT");
   public static final Param<String> LATENCY_SINK = Param.string("latency-sink", "STDOUT");
   public static final Param<String> RULES_EXPORT_SINK = Param.string("rules-export-sink", "STDOUT");
 
   public static final Param<Integer> RECORDS_PER_SECOND = Param.integer("records-per-second", 2);
 
+  // Replay:
+  //    bounded re-run of recorded transactions (data-source FILE or KAFKA) against a fixed rule set
+  public static final Param<Boolean> REPLAY = Param.bool("replay", false);
+  public static final Param<String> DATA_FILE = Param.string("data-file", "");
+  public static final Param<String> RULES_FILE = Param.string("rules-file", "");
+  //    Kafka record timestamps, resolved to per-partition offsets on submission,
+  //    format: yyyy-MM-dd HH:mm:ss (UTC)
+  public static final Param<String> REPLAY_FROM = Param.string("replay-from", "");
+  public static final Param<String> REPLAY_UNTIL = Param.string("replay-until", "");
+
   public static final String LOCAL_MODE_DISABLE_WEB_UI = "-1";
 
   /**
@@ -121,6 +132,12 @@ public class Parameters {
   public static final Param<Integer> MIN_PAUSE_BETWEEN_CHECKPOINTS =
       Param.integer("min-pause-btwn-checkpoints", 60_000_0);
   public static final Param<Integer> OUT_OF_ORDERNESS = Param.integer("out-of-orderdness", 500);
+  // Kafka source: track watermarks per partition inside the consumer
+  public static final Param<Boolean> PARTITION_WATERMARKS =
+      Param.bool("partition-watermarks", true);
+  // milliseconds without records after which a source split is marked idle, 0 disables
+  public static final Param<Integer> SOURCE_IDLE_TIMEOUT =
+      Param.integer("source-idle-timeout", 30_000);
 
   //  List<Param> list = Arrays.asList(new String[]{"foo", "bar"});
 
@@ -141,9 +158,14 @@ public class Parameters {
           GCP_PUBSUB_RULES_EXPORT_SUBSCRIPTION,
           RULES_SOURCE,
           TRANSACTIONS_SOURCE,
+          DATA_FORMAT,
           ALERTS_SINK,
           LATENCY_SINK,
-          RULES_EXPORT_SINK);
+          RULES_EXPORT_SINK,
+          DATA_FILE,
+          RULES_FILE,
+          REPLAY_FROM,
+          REPLAY_UNTIL);
 
   public static final List<Param<Integer>> INT_PARAMS =
       Arrays.asList(
@@ -154,7 +176,9 @@ public class Parameters {
           SINK_PARALLELISM,
           CHECKPOINT_INTERVAL,
           MIN_PAUSE_BETWEEN_CHECKPOINTS,
-          OUT_OF_ORDERNESS);
+          OUT_OF_ORDERNESS,
+          SOURCE_IDLE_TIMEOUT);
 
-  public static final List<Param<Boolean>> BOOL_PARAMS = Collections.emptyList();
+  public static final List<Param<Boolean>> BOOL_PARAMS =
+      Arrays.asList(REPLAY, PARTITION_WATERMARKS);
 }
@@ -18,6 +18,7 @@
 
 package com.geekbang.flink.dynamicrules;
 
+import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.List;
 import lombok.Data;
@@ -29,7 +30,7 @@ import org.apache.flink.api.common.time.Time;
 @EqualsAndHashCode
 @ToString
 @Data
-public class Rule {
+public class Rule implements Serializable {
 
   private Integer ruleId;
   private RuleState ruleState;
@@ -40,6 +41,7 @@ public class Rule {
   private BigDecimal limit;
   private Integer windowMinutes;
   private ControlType controlType;
+  private List<Rule> rules; // complete rule set, SNAPSHOT only
 
   public Long getWindowMillis() {
     return Time.minutes(this.windowMinutes).toMilliseconds();
@@ -109,7 +111,8 @@ public class Rule {
     ACTIVE,
     PAUSE,
     DELETE,
-    CONTROL
+    CONTROL,
+    SNAPSHOT
   }
 
   public enum ControlType {
@@ -34,10 +34,31 @@ public class RuleParser {
   private final ObjectMapper objectMapper = new ObjectMapper();
 
   public Rule fromString(String line) throws IOException {
+    Rule rule;
     if (line.length() > 0 && '{' == line.charAt(0)) {
-      return parseJson(line);
+      rule = parseJson(line);
     } else {
-      return parsePlain(line);
+      rule = parsePlain(line);
+    }
+    if (rule.getRuleState() == RuleState.SNAPSHOT) {
+      validateSnapshot(rule, line);
+    }
+    return rule;
+  }
+
+  /**
+   * A snapshot replaces the complete rule set, so it must only contain plain rules: no control
+   * messages, deletions or nested snapshots.
+   */
+  private static void validateSnapshot(Rule snapshot, String line) throws IOException {
+    if (snapshot.getRules() == null) {
+      throw new IOException("Invalid rule snapshot (no rules): " + line);
+    }
+    for (Rule rule : snapshot.getRules()) {
+      if (rule.getRuleId() == null
+          || (rule.getRuleState() != RuleState.ACTIVE && rule.getRuleState() != RuleState.PAUSE)) {
+        throw new IOException("Invalid rule snapshot (unexpected rule " + rule + "): " + line);
+      }
     }
   }
 
@@ -22,10 +22,9 @@ import static com.geekbang.flink.config.Parameters.CHECKPOINT_INTERVAL;
 import static com.geekbang.flink.config.Parameters.LOCAL_EXECUTION;
 import static com.geekbang.flink.config.Parameters.LOCAL_MODE_DISABLE_WEB_UI;
 import static com.geekbang.flink.config.Parameters.MIN_PAUSE_BETWEEN_CHECKPOINTS;
-import static com.geekbang.flink.config.Parameters.OUT_OF_ORDERNESS;
+import static com.geekbang.flink.config.Parameters.REPLAY;
 import static com.geekbang.flink.config.Parameters.RULES_SOURCE;
 import static com.geekbang.flink.config.Parameters.SINK_PARALLELISM;
-import static com.geekbang.flink.config.Parameters.SOURCE_PARALLELISM;
 import static org.apache.flink.configuration.RestOptions.BIND_PORT;
 
 import com.geekbang.flink.config.Config;
@@ -38,6 +37,8 @@ import com.geekbang.flink.dynamicrules.sinks.LatencySink;
 import com.geekbang.flink.dynamicrules.sources.RulesSource;
 import com.geekbang.flink.dynamicrules.sources.TransactionsSource;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.flink.api.common.restartstrategy.RestartStrategies;
@@ -51,7 +52,6 @@ import org.apache.flink.streaming.api.datastream.DataStream;
 import org.apache.flink.streaming.api.datastream.SingleOutputStreamOperator;
 import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.streaming.api.functions.source.SourceFunction;
-import org.apache.flink.streaming.api.functions.timestamps.BoundedOutOfOrdernessTimestampExtractor;
 import org.apache.flink.streaming.api.windowing.time.Time;
 import org.apache.flink.util.OutputTag;
 
@@ -69,9 +69,16 @@ public class RulesEvaluator {
     // Environment setup
     StreamExecutionEnvironment env = configureStreamExecutionEnvironment();
 
+    // Replay runs a fixed rule set over a bounded input, see TransactionsSource
+    boolean replay = config.get(REPLAY);
+    List<Rule> initialRules =
+        replay ? RulesSource.loadReplayRules(config) : Collections.<Rule>emptyList();
+
     // Streams setup
-    DataStream<Rule> rulesUpdateStream = getRulesUpdateStream(env);
-    DataStream<Transaction> transactions = getTransactionsStream(env);
+    DataStream<Rule> rulesUpdateStream =
+        replay ? getReplayRulesStream(env, initialRules) : getRulesUpdateStream(env);
+    DataStream<Transaction> transactions =
+        TransactionsSource.createTransactionsStream(env, config, replay);
 
     BroadcastStream<Rule> rulesStream = rulesUpdateStream.broadcast(Descriptors.rulesDescriptor);
 
@@ -79,12 +86,12 @@ public class RulesEvaluator {
     DataStream<Alert> alerts =
         transactions
             .connect(rulesStream)
-            .process(new DynamicKeyFunction())
+            .process(new DynamicKeyFunction(initialRules))
             .uid("DynamicKeyFunction")
             .name("Dynamic Partitioning Function")
             .keyBy((keyed) -> keyed.getKey())
             .connect(rulesStream)
-            .process(new DynamicAlertFunction())
+            .process(new DynamicAlertFunction(initialRules))
             .uid("DynamicAlertFunction")
             .name("Dynamic Rule Evaluation Function");
 
@@ -115,21 +122,7 @@ public class RulesEvaluator {
             .map(String::valueOf);
     latencies.addSink(LatencySink.createLatencySink(config)).name("Latency Sink");
 
-    env.execute("Fraud Detection Engine");
-  }
-
-  private DataStream<Transaction> getTransactionsStream(StreamExecutionEnvironment env) {
-    // Data stream setup
-    SourceFunction<String> transactionSource = TransactionsSource.createTransactionsSource(config);
-    int sourceParallelism = config.get(SOURCE_PARALLELISM);
-    DataStream<String> transactionsStringsStream =
-        env.addSource(transactionSource)
-            .name("Transactions Source")
-            .setParallelism(sourceParallelism);
-    DataStream<Transaction> transactionsStream =
-        TransactionsSource.stringsStreamToTransactions(transactionsStringsStream);
-    return transactionsStream.assignTimestampsAndWatermarks(
-        new SimpleBoundedOutOfOrdernessTimestampExtractor<>(config.get(OUT_OF_ORDERNESS)));
+    env.execute(replay ? "Fraud Detection Engine (Replay)" : "Fraud Detection Engine");
   }
 
   private DataStream<Rule> getRulesUpdateStream(StreamExecutionEnvironment env) throws IOException {
@@ -142,6 +135,12 @@ public class RulesEvaluator {
     return RulesSource.stringsStreamToRules(rulesStrings);
   }
 
+  private DataStream<Rule> getReplayRulesStream(
+      StreamExecutionEnvironment env, List<Rule> replayRules) {
+    // Bounded, so its final watermark does not hold back the transactions' event time
+    return env.fromCollection(replayRules).name("Rules Source (Replay)").setParallelism(1);
+  }
+
   private RulesSource.Type getRulesSourceType() {
     String rulesSource = config.get(RULES_SOURCE);
     return RulesSource.Type.valueOf(rulesSource.toUpperCase());
@@ -175,19 +174,6 @@ public class RulesEvaluator {
     return env;
   }
 
-  private static class SimpleBoundedOutOfOrdernessTimestampExtractor<T extends Transaction>
-      extends BoundedOutOfOrdernessTimestampExtractor<T> {
-
-    public SimpleBoundedOutOfOrdernessTimestampExtractor(int outOfOrderdnessMillis) {
-      super(Time.of(outOfOrderdnessMillis, TimeUnit.MILLISECONDS));
-    }
-
-    @Override
-    public long extractTimestamp(T element) {
-      return element.getEventTime();
-    }
-  }
-
   public static class Descriptors {
     public static final MapStateDescriptor<Integer, Rule> rulesDescriptor =
         new MapStateDescriptor<>(
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.dynamicrules;
+
+import com.geekbang.flink.dynamicrules.Transaction.PaymentType;
+import java.math.BigDecimal;
+
+/**
+ * Decodes the CSV format of {@link Transaction#fromString} by scanning the line in place: no
+ * tokens, no formatter and no intermediate strings. The timestamp has the fixed {@code yyyy-MM-dd
+ * HH:mm:ss} (UTC) layout and is converted arithmetically, amounts with up to 18 digits are built
+ * from their unscaled value.
+ *
+ * <p>Instances keep the scan position and are not thread-safe; use one per thread or subtask.
+ */
+public class TransactionCsvDecoder {
+
+  private static final int NUM_FIELDS = 7;
+  private static final int TIMESTAMP_LENGTH = "yyyy-MM-dd HH:mm:ss".length();
+  private static final int MAX_UNSCALED_DIGITS = 18;
+  private static final long MILLIS_PER_DAY = 86_400_000L;
+
+  private CharSequence line;
+  private int pos;
+  private int field;
+
+  public Transaction decode(CharSequence line) {
+    this.line = line;
+    this.pos = 0;
+    this.field = 0;
+
+    Transaction transaction = new Transaction();
+    transaction.transactionId = parseLong();
+    transaction.eventTime = parseTimestamp();
+    transaction.payeeId = parseLong();
+    transaction.beneficiaryId = parseLong();
+    transaction.paymentType = parsePaymentType();
+    transaction.paymentAmount = parseDecimal();
+    transaction.setIngestionTimestamp(parseLong());
+
+    if (pos != line.length() + 1) {
+      throw invalid("Required number of arguments: " + NUM_FIELDS + " found more");
+    }
+    this.line = null;
+    return transaction;
+  }
+
+  private long parseLong() {
+    int end = fieldEnd();
+    boolean negative = pos < end && line.charAt(pos) == '-';
+    int start = negative ? pos + 1 : pos;
+    if (start == end) {
+      throw invalid("Empty number");
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = digit(i);
+      if (value < (Long.MIN_VALUE + digit) / 10) {
+        throw invalid("Number out of range");
+      }
+      // accumulate negatively, so that Long.MIN_VALUE is representable
+      value = value * 10 - digit;
+    }
+    if (!negative && value == Long.MIN_VALUE) {
+      throw invalid("Number out of range");
+    }
+    pos = end + 1;
+    return negative ? value : -value;
+  }
+
+  private long parseTimestamp() {
+    int end = fieldEnd();
+    if (end - pos != TIMESTAMP_LENGTH
+        || line.charAt(pos + 4) != '-'
+        || line.charAt(pos + 7) != '-'
+        || line.charAt(pos + 10) != ' '
+        || line.charAt(pos + 13) != ':'
+        || line.charAt(pos + 16) != ':') {
+      throw invalid("Expected yyyy-MM-dd HH:mm:ss");
+    }
+    int year = digits(pos, 4);
+    int month = digits(pos + 5, 2);
+    int day = digits(pos + 8, 2);
+    int hour = digits(pos + 11, 2);
+    int minute = digits(pos + 14, 2);
+    int second = digits(pos + 17, 2);
+    if (month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month) || hour > 23
+        || minute > 59 || second > 59) {
+      throw invalid("Invalid date-time");
+    }
+    pos = end + 1;
+    return epochDay(year, month, day) * MILLIS_PER_DAY
+        + ((hour * 60L + minute) * 60L + second) * 1000L;
+  }
+
+  private PaymentType parsePaymentType() {
+    int end = fieldEnd();
+    PaymentType paymentType = null;
+    for (PaymentType candidate : PaymentType.values()) {
+      if (regionEquals(candidate.representation, end)) {
+        paymentType = candidate;
+        break;
+      }
+    }
+    // unknown representations map to null, as in PaymentType.fromString
+    pos = end + 1;
+    return paymentType;
+  }
+
+  private BigDecimal parseDecimal() {
+    int end = fieldEnd();
+    int start = pos;
+    boolean negative = start < end && line.charAt(start) == '-';
+    if (negative) {
+      start++;
+    }
+    long unscaled = 0;
+    int digits = 0;
+    int scale = 0;
+    boolean fraction = false;
+    for (int i = start; i < end; i++) {
+      char c = line.charAt(i);
+      if (c == '.' && !fraction) {
+        fraction = true;
+        continue;
+      }
+      unscaled = unscaled * 10 + digit(i);
+      digits++;
+      if (fraction) {
+        scale++;
+      }
+    }
+    if (digits == 0) {
+      throw invalid("Empty amount");
+    }
+    BigDecimal value;
+    if (digits <= MAX_UNSCALED_DIGITS) {
+      value = BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    } else {
+      value = new BigDecimal(line.subSequence(pos, end).toString());
+    }
+    pos = end + 1;
+    return value;
+  }
+
+  /** Index of the next separator (or the line end); throws if the line has too few fields. */
+  private int fieldEnd() {
+    if (pos > line.length()) {
+      throw invalid("Required number of arguments: " + NUM_FIELDS + " found " + field);
+    }
+    field++;
+    int i = pos;
+    int length = line.length();
+    while (i < length && line.charAt(i) != ',') {
+      i++;
+    }
+    if (i == length && field < NUM_FIELDS) {
+      throw invalid("Required number of arguments: " + NUM_FIELDS + " found " + field);
+    }
+    return i;
+  }
+
+  private boolean regionEquals(String expected, int end) {
+    if (end - pos != expected.length()) {
+      return false;
+    }
+    for (int i = 0; i < expected.length(); i++) {
+      if (line.charAt(pos + i) != expected.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int digits(int from, int count) {
+    int value = 0;
+    for (int i = from; i < from + count; i++) {
+      value = value * 10 + digit(i);
+    }
+    return value;
+  }
+
+  private int digit(int index) {
+    int digit = line.charAt(index) - '0';
+    if (digit < 0 || digit > 9) {
+      throw invalid("Unexpected character '" + line.charAt(index) + "' at " + index);
+    }
+    return digit;
+  }
+
+  private RuntimeException invalid(String reason) {
+    return new IllegalArgumentException("Invalid transaction: " + line + ". " + reason);
+  }
+
+  static int lengthOfMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+        return leap ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /** Days since 1970-01-01 in the proleptic Gregorian calendar (H. Hinnant's days_from_civil). */
+  static long epochDay(int year, int month, int day) {
+    int y = month <= 2 ? year - 1 : year;
+    long era = (y >= 0 ? y : y - 399) / 400;
+    long yoe = y - era * 400;
+    long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+    return era * 146097 + doe - 719468;
+  }
+}
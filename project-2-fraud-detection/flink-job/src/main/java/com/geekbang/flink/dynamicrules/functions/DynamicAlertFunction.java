@@ -19,7 +19,9 @@
 package com.geekbang.flink.dynamicrules.functions;
 
 import static com.geekbang.flink.dynamicrules.functions.ProcessingUtils.addToStateValuesSet;
+import static com.geekbang.flink.dynamicrules.functions.ProcessingUtils.getRule;
 import static com.geekbang.flink.dynamicrules.functions.ProcessingUtils.handleRuleBroadcast;
+import static com.geekbang.flink.dynamicrules.functions.ProcessingUtils.indexRules;
 
 import com.geekbang.flink.dynamicrules.Alert;
 import com.geekbang.flink.dynamicrules.FieldsExtractor;
@@ -58,6 +60,9 @@ public class DynamicAlertFunction
 
   private static int WIDEST_RULE_KEY = Integer.MIN_VALUE;
 
+  private final Map<Integer, Rule> initialRules;
+  private final Rule initialWidestWindowRule;
+
   private transient MapState<Long, Set<Transaction>> windowState;
   private Meter alertMeter;
 
@@ -67,6 +72,16 @@ public class DynamicAlertFunction
           BasicTypeInfo.LONG_TYPE_INFO,
           TypeInformation.of(new TypeHint<Set<Transaction>>() {}));
 
+  public DynamicAlertFunction() {
+    this(Collections.emptyList());
+  }
+
+  /** @param initialRules rules evaluated in addition to the broadcast ones, see replay mode */
+  public DynamicAlertFunction(List<Rule> initialRules) {
+    this.initialRules = indexRules(initialRules);
+    this.initialWidestWindowRule = widestWindowRule(initialRules);
+  }
+
   @Override
   public void open(Configuration parameters) {
 
@@ -88,7 +103,8 @@ public class DynamicAlertFunction
     long ingestionTime = value.getWrapped().getIngestionTimestamp();
     ctx.output(Descriptors.latencySinkTag, System.currentTimeMillis() - ingestionTime);
 
-    Rule rule = ctx.getBroadcastState(Descriptors.rulesDescriptor).get(value.getId());
+    Rule rule =
+        getRule(ctx.getBroadcastState(Descriptors.rulesDescriptor), initialRules, value.getId());
 
     if (rule == null) {
       // This could happen if the BroadcastState in this CoProcessFunction was updated after it was
@@ -136,7 +152,12 @@ public class DynamicAlertFunction
     BroadcastState<Integer, Rule> broadcastState =
         ctx.getBroadcastState(Descriptors.rulesDescriptor);
     handleRuleBroadcast(rule, broadcastState);
-    updateWidestWindowRule(rule, broadcastState);
+    if (rule.getRuleState() == RuleState.SNAPSHOT) {
+      installWidestWindowRule(rule.getRules(), broadcastState);
+      log.info("Installed snapshot of {} rules", rule.getRules().size());
+    } else {
+      updateWidestWindowRule(rule, broadcastState);
+    }
     if (rule.getRuleState() == RuleState.CONTROL) {
       handleControlCommand(rule, broadcastState, ctx);
     }
@@ -190,11 +211,32 @@ public class DynamicAlertFunction
   private void updateWidestWindowRule(Rule rule, BroadcastState<Integer, Rule> broadcastState)
       throws Exception {
     Rule widestWindowRule = broadcastState.get(WIDEST_RULE_KEY);
-    if (widestWindowRule != null && widestWindowRule.getRuleState() == Rule.RuleState.ACTIVE) {
-      if (widestWindowRule.getWindowMillis() < rule.getWindowMillis()) {
-        broadcastState.put(WIDEST_RULE_KEY, rule);
+    if (rule.getRuleState() != Rule.RuleState.ACTIVE) {
+      return;
+    }
+    if (widestWindowRule == null || widestWindowRule.getWindowMillis() < rule.getWindowMillis()) {
+      broadcastState.put(WIDEST_RULE_KEY, rule);
+    }
+  }
+
+  private void installWidestWindowRule(
+      List<Rule> rules, BroadcastState<Integer, Rule> broadcastState) throws Exception {
+    Rule widestWindowRule = widestWindowRule(rules);
+    if (widestWindowRule != null) {
+      broadcastState.put(WIDEST_RULE_KEY, widestWindowRule);
+    }
+  }
+
+  private static Rule widestWindowRule(Collection<Rule> rules) {
+    Rule widestWindowRule = null;
+    for (Rule rule : rules) {
+      if (rule.getRuleState() == Rule.RuleState.ACTIVE
+          && (widestWindowRule == null
+              || widestWindowRule.getWindowMillis() < rule.getWindowMillis())) {
+        widestWindowRule = rule;
       }
     }
+    return widestWindowRule;
   }
 
   @Override
@@ -202,6 +244,12 @@ public class DynamicAlertFunction
       throws Exception {
 
     Rule widestWindowRule = ctx.getBroadcastState(Descriptors.rulesDescriptor).get(WIDEST_RULE_KEY);
+    // the initial rules are never broadcast, so their window has to be kept as well
+    if (widestWindowRule == null
+        || (initialWidestWindowRule != null
+            && initialWidestWindowRule.getWindowMillis() > widestWindowRule.getWindowMillis())) {
+      widestWindowRule = initialWidestWindowRule;
+    }
 
     Optional<Long> cleanupEventTimeWindow =
         Optional.ofNullable(widestWindowRule).map(Rule::getWindowMillis);
@@ -19,6 +19,7 @@
 package com.geekbang.flink.dynamicrules.functions;
 
 import static com.geekbang.flink.dynamicrules.functions.ProcessingUtils.handleRuleBroadcast;
+import static com.geekbang.flink.dynamicrules.functions.ProcessingUtils.indexRules;
 
 import com.geekbang.flink.dynamicrules.Keyed;
 import com.geekbang.flink.dynamicrules.KeysExtractor;
@@ -27,7 +28,9 @@ import com.geekbang.flink.dynamicrules.Rule.ControlType;
 import com.geekbang.flink.dynamicrules.Rule.RuleState;
 import com.geekbang.flink.dynamicrules.RulesEvaluator.Descriptors;
 import com.geekbang.flink.dynamicrules.Transaction;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import lombok.extern.slf4j.Slf4j;
@@ -43,8 +46,22 @@ import org.apache.flink.util.Collector;
 public class DynamicKeyFunction
     extends BroadcastProcessFunction<Transaction, Rule, Keyed<Transaction, String, Integer>> {
 
+  private final Map<Integer, Rule> initialRules;
+
   private RuleCounterGauge ruleCounterGauge;
 
+  public DynamicKeyFunction() {
+    this(Collections.emptyList());
+  }
+
+  /**
+   * @param initialRules rules applied in addition to the broadcast ones, so that a bounded replay
+   *     does not depend on the rules stream winning the race against the first transactions
+   */
+  public DynamicKeyFunction(List<Rule> initialRules) {
+    this.initialRules = indexRules(initialRules);
+  }
+
   @Override
   public void open(Configuration parameters) {
     ruleCounterGauge = new RuleCounterGauge();
@@ -73,6 +90,14 @@ public class DynamicKeyFunction
               event, KeysExtractor.getKey(rule.getGroupingKeyNames(), event), rule.getRuleId()));
       ruleCounter++;
     }
+    for (Rule rule : initialRules.values()) {
+      if (!rulesState.contains(rule.getRuleId())) {
+        out.collect(
+            new Keyed<>(
+                event, KeysExtractor.getKey(rule.getGroupingKeyNames(), event), rule.getRuleId()));
+        ruleCounter++;
+      }
+    }
     ruleCounterGauge.setValue(ruleCounter);
   }
 
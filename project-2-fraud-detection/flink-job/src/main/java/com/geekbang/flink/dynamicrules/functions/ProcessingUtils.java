@@ -19,10 +19,16 @@
 package com.geekbang.flink.dynamicrules.functions;
 
 import com.geekbang.flink.dynamicrules.Rule;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import org.apache.flink.api.common.state.BroadcastState;
 import org.apache.flink.api.common.state.MapState;
+import org.apache.flink.api.common.state.ReadOnlyBroadcastState;
 
 class ProcessingUtils {
 
@@ -36,7 +42,48 @@ class ProcessingUtils {
       case DELETE:
         broadcastState.remove(rule.getRuleId());
         break;
+      case SNAPSHOT:
+        installSnapshot(rule.getRules(), broadcastState);
+        break;
+    }
+  }
+
+  /**
+   * Replaces the whole content of the broadcast state with the rules of a snapshot. Broadcast
+   * elements are processed one at a time, so no transaction ever sees a partially installed rule
+   * set.
+   */
+  private static void installSnapshot(
+      List<Rule> rules, BroadcastState<Integer, Rule> broadcastState) throws Exception {
+    Map<Integer, Rule> rulesById = indexRules(rules);
+    Iterator<Entry<Integer, Rule>> entriesIterator = broadcastState.iterator();
+    while (entriesIterator.hasNext()) {
+      if (!rulesById.containsKey(entriesIterator.next().getKey())) {
+        entriesIterator.remove();
+      }
+    }
+    broadcastState.putAll(rulesById);
+  }
+
+  static Map<Integer, Rule> indexRules(List<Rule> rules) {
+    Map<Integer, Rule> rulesById = new HashMap<>();
+    for (Rule rule : rules) {
+      rulesById.put(rule.getRuleId(), rule);
     }
+    return rulesById;
+  }
+
+  /**
+   * Looks the rule up in the broadcast state first and falls back to the initial rules, which are
+   * known before any broadcast element arrives (e.g. in replay mode).
+   */
+  static Rule getRule(
+      ReadOnlyBroadcastState<Integer, Rule> broadcastState,
+      Map<Integer, Rule> initialRules,
+      Integer ruleId)
+      throws Exception {
+    Rule rule = broadcastState.get(ruleId);
+    return rule != null ? rule : initialRules.get(ruleId);
   }
 
   static <K, V> Set<V> addToStateValuesSet(MapState<K, Set<V>> mapState, K key, V value)
@@ -41,7 +41,9 @@ public class RuleDeserializer extends RichFlatMapFunction<String, Rule> {
   public void flatMap(String value, Collector<Rule> out) {
     try {
       Rule rule = ruleParser.fromString(value);
-      if (rule.getRuleState() != RuleState.CONTROL && rule.getRuleId() == null) {
+      if (rule.getRuleState() != RuleState.CONTROL
+          && rule.getRuleState() != RuleState.SNAPSHOT
+          && rule.getRuleId() == null) {
         throw new NullPointerException("ruleId cannot be null: " + rule.toString());
       }
       out.collect(rule);
@@ -19,6 +19,9 @@
 package com.geekbang.flink.dynamicrules.functions;
 
 import com.geekbang.flink.sources.BaseGenerator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.SplittableRandom;
 
 public class RulesStaticJsonGenerator extends BaseGenerator<String> {
@@ -59,6 +62,10 @@ public class RulesStaticJsonGenerator extends BaseGenerator<String> {
             + "\"windowMinutes\":\"1440\"}",
       };
 
+  public static List<String> getRules() {
+    return Collections.unmodifiableList(Arrays.asList(RULES));
+  }
+
   @Override
   public String randomEvent(SplittableRandom rnd, long id) {
     if (id >= 0 && id < RULES.length) {
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.dynamicrules.functions;
+
+import com.geekbang.flink.dynamicrules.Transaction;
+import com.geekbang.flink.dynamicrules.TransactionCsvDecoder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.flink.api.common.functions.RichFlatMapFunction;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.util.Collector;
+
+@Slf4j
+public class TransactionCsvDeserializer extends RichFlatMapFunction<String, Transaction> {
+
+  private transient TransactionCsvDecoder decoder;
+
+  @Override
+  public void open(Configuration parameters) throws Exception {
+    super.open(parameters);
+    decoder = new TransactionCsvDecoder();
+  }
+
+  @Override
+  public void flatMap(String value, Collector<Transaction> out) {
+    try {
+      out.collect(decoder.decode(value));
+    } catch (Exception e) {
+      log.warn("Failed parsing transaction {}, dropping it: ", value, e);
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.dynamicrules.simulator;
+
+import static com.geekbang.flink.config.Parameters.DATA_FILE;
+import static com.geekbang.flink.config.Parameters.OUT_OF_ORDERNESS;
+
+import com.geekbang.flink.config.Config;
+import com.geekbang.flink.config.Parameters;
+import com.geekbang.flink.dynamicrules.FieldsExtractor;
+import com.geekbang.flink.dynamicrules.JsonMapper;
+import com.geekbang.flink.dynamicrules.KeysExtractor;
+import com.geekbang.flink.dynamicrules.Rule;
+import com.geekbang.flink.dynamicrules.RuleHelper;
+import com.geekbang.flink.dynamicrules.Transaction;
+import com.geekbang.flink.dynamicrules.TransactionCsvDecoder;
+import com.geekbang.flink.dynamicrules.sources.RulesSource;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import org.apache.flink.api.common.accumulators.SimpleAccumulator;
+
+/**
+ * Evaluates candidate rules over recorded transactions without a Flink cluster, with the semantics
+ * of {@link com.geekbang.flink.dynamicrules.functions.DynamicAlertFunction}. Transactions are
+ * partitioned by the rule's grouping key and the keys are evaluated in parallel on a fork-join
+ * pool, keeping the recorded order within each key. The rule state is ignored: every candidate is
+ * evaluated as if it was ACTIVE.
+ *
+ * <p>Usage: {@code --data-file <transactions> [--rules-file <rules>] [--out-of-orderdness <ms>]}.
+ * Transaction lines are either CSV as read by {@link TransactionCsvDecoder} or JSON, rule lines
+ * are anything {@link com.geekbang.flink.dynamicrules.RuleParser} accepts.
+ */
+public class RuleSimulator {
+
+  private static final String COUNT = "COUNT_FLINK";
+  private static final String COUNT_WITH_RESET = "COUNT_WITH_RESET_FLINK";
+
+  private final ForkJoinPool pool;
+  private final long outOfOrdernessMillis;
+
+  public RuleSimulator(int parallelism, long outOfOrdernessMillis) {
+    this.pool = new ForkJoinPool(parallelism);
+    this.outOfOrdernessMillis = outOfOrdernessMillis;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Config config = Config.fromParameters(Parameters.fromArgs(args));
+    List<Rule> rules = RulesSource.loadReplayRules(config);
+
+    RuleSimulator simulator =
+        new RuleSimulator(Runtime.getRuntime().availableProcessors(), config.get(OUT_OF_ORDERNESS));
+    try {
+      long start = System.nanoTime();
+      List<Transaction> transactions = simulator.loadTransactions(Paths.get(config.get(DATA_FILE)));
+      System.out.printf(
+          "Loaded %d transactions in %d ms%n",
+          transactions.size(), (System.nanoTime() - start) / 1_000_000);
+
+      for (Rule rule : rules) {
+        start = System.nanoTime();
+        SimulationResult result = simulator.simulate(rule, transactions);
+        System.out.printf("%s in %d ms%n", result, (System.nanoTime() - start) / 1_000_000);
+      }
+    } finally {
+      simulator.shutdown();
+    }
+  }
+
+  public List<Transaction> loadTransactions(Path path) throws Exception {
+    List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+    JsonMapper<Transaction> jsonMapper = new JsonMapper<>(Transaction.class);
+    ThreadLocal<TransactionCsvDecoder> csvDecoder =
+        ThreadLocal.withInitial(TransactionCsvDecoder::new);
+    return pool.submit(
+            () ->
+                lines.parallelStream()
+                    .filter(line -> !line.isEmpty())
+                    .map(line -> parseTransaction(jsonMapper, csvDecoder.get(), line))
+                    .collect(Collectors.toList()))
+        .get();
+  }
+
+  public SimulationResult simulate(Rule rule, List<Transaction> transactions) throws Exception {
+    // groupingBy keeps the encounter order within each key, also for parallel streams
+    Map<String, List<Transaction>> transactionsByKey =
+        pool.submit(
+                () ->
+                    transactions.parallelStream()
+                        .collect(Collectors.groupingBy(transaction -> getKey(rule, transaction))))
+            .get();
+
+    return pool.submit(
+            () ->
+                transactionsByKey.values().parallelStream()
+                    .map(keyTransactions -> simulateKey(rule, keyTransactions))
+                    .reduce(SimulationResult::merge)
+                    .orElse(new SimulationResult(rule.getRuleId(), 0, 0, 0, 0)))
+        .get();
+  }
+
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  private SimulationResult simulateKey(Rule rule, List<Transaction> keyTransactions) {
+    NavigableMap<Long, List<BigDecimal>> windowState = new TreeMap<>();
+    long windowMillis = rule.getWindowMillis();
+    long maxEventTime = Long.MIN_VALUE;
+    long retained = 0;
+    long peak = 0;
+    long alerts = 0;
+
+    for (Transaction transaction : keyTransactions) {
+      long currentEventTime = transaction.getEventTime();
+      windowState
+          .computeIfAbsent(currentEventTime, time -> new ArrayList<>())
+          .add(getAggregatedValue(rule, transaction));
+      peak = Math.max(peak, ++retained);
+
+      SimpleAccumulator<BigDecimal> aggregator = RuleHelper.getAggregator(rule);
+      for (List<BigDecimal> values :
+          windowState
+              .subMap(rule.getWindowStartFor(currentEventTime), true, currentEventTime, true)
+              .values()) {
+        for (BigDecimal value : values) {
+          aggregator.add(value);
+        }
+      }
+
+      if (rule.apply(aggregator.getLocalValue())) {
+        alerts++;
+        if (COUNT_WITH_RESET.equals(rule.getAggregateFieldName())) {
+          windowState.clear();
+          retained = 0;
+        }
+      }
+
+      // Same cut-off as the cleanup timers, which fire once the watermark passes
+      if (currentEventTime > maxEventTime) {
+        maxEventTime = currentEventTime;
+        retained -= evictBefore(windowState, maxEventTime - outOfOrdernessMillis - windowMillis);
+      }
+    }
+    return new SimulationResult(rule.getRuleId(), 1, alerts, peak, peak);
+  }
+
+  private static long evictBefore(NavigableMap<Long, List<BigDecimal>> windowState, long threshold) {
+    long evicted = 0;
+    Iterator<List<BigDecimal>> aged = windowState.headMap(threshold, false).values().iterator();
+    while (aged.hasNext()) {
+      evicted += aged.next().size();
+      aged.remove();
+    }
+    return evicted;
+  }
+
+  private static BigDecimal getAggregatedValue(Rule rule, Transaction transaction) {
+    if (COUNT.equals(rule.getAggregateFieldName())
+        || COUNT_WITH_RESET.equals(rule.getAggregateFieldName())) {
+      return BigDecimal.ONE;
+    }
+    try {
+      return FieldsExtractor.getBigDecimalByName(rule.getAggregateFieldName(), transaction);
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      throw new IllegalArgumentException("Invalid aggregate field in " + rule, e);
+    }
+  }
+
+  private static String getKey(Rule rule, Transaction transaction) {
+    try {
+      return KeysExtractor.getKey(rule.getGroupingKeyNames(), transaction);
+    } catch (NoSuchFieldException | IllegalAccessException e) {
+      throw new IllegalArgumentException("Invalid grouping key in " + rule, e);
+    }
+  }
+
+  private static Transaction parseTransaction(
+      JsonMapper<Transaction> jsonMapper, TransactionCsvDecoder csvDecoder, String line) {
+    if ('{' != line.charAt(0)) {
+      return csvDecoder.decode(line);
+    }
+    try {
+      return jsonMapper.fromString(line);
+    } catch (IOException e) {
+      throw new RuntimeException("Invalid record: " + line, e);
+    }
+  }
+}
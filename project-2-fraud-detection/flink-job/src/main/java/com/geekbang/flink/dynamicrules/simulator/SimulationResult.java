@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.dynamicrules.simulator;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/** Outcome of simulating one rule, see {@link RuleSimulator}. */
+@Data
+@AllArgsConstructor
+public class SimulationResult {
+  private Integer ruleId;
+  private long keys;
+  private long alerts;
+  // peak number of transactions retained in the window state of a single key
+  private long peakEventsPerKey;
+  // sum of the per-key peaks, an upper bound of the rule's total window state
+  private long peakEventsTotal;
+
+  static SimulationResult merge(SimulationResult a, SimulationResult b) {
+    return new SimulationResult(
+        a.ruleId,
+        a.keys + b.keys,
+        a.alerts + b.alerts,
+        Math.max(a.peakEventsPerKey, b.peakEventsPerKey),
+        a.peakEventsTotal + b.peakEventsTotal);
+  }
+}
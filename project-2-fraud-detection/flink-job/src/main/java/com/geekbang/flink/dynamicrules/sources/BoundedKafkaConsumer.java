@@ -0,0 +1,176 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.dynamicrules.sources;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.stream.Collectors;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.common.state.ListState;
+import org.apache.flink.api.common.state.ListStateDescriptor;
+import org.apache.flink.api.common.typeinfo.TypeHint;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.api.java.tuple.Tuple2;
+import org.apache.flink.configuration.Configuration;
+import org.apache.flink.runtime.state.FunctionInitializationContext;
+import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer011;
+import org.apache.flink.streaming.connectors.kafka.internals.KafkaTopicPartition;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+
+/**
+ * Kafka consumer that replays a fixed offset range of a topic and then finishes. The start and
+ * stop offset of every partition are looked up when the job is submitted, so partitions that
+ * receive no further records cannot keep the replay running.
+ */
+class BoundedKafkaConsumer<T> extends FlinkKafkaConsumer011<T> {
+
+  private static final long serialVersionUID = 1L;
+
+  // name of the offsets state of FlinkKafkaConsumerBase
+  private static final String OFFSETS_STATE_NAME = "topic-partition-offset-states";
+
+  private final String topic;
+  private final BoundedKafkaDeserializationSchema<T> boundedSchema;
+
+  private BoundedKafkaConsumer(
+      String topic, BoundedKafkaDeserializationSchema<T> boundedSchema, Properties props) {
+    super(topic, boundedSchema, props);
+    this.topic = topic;
+    this.boundedSchema = boundedSchema;
+  }
+
+  /**
+   * Creates a consumer for the records of {@code topic} from {@code fromTimestamp} up to and
+   * including {@code untilTimestamp}. A negative bound stands for the earliest offset, respectively
+   * the end offset at submission time.
+   */
+  static <T> BoundedKafkaConsumer<T> create(
+      String topic,
+      DeserializationSchema<T> valueSchema,
+      Properties props,
+      long fromTimestamp,
+      long untilTimestamp) {
+    Map<TopicPartition, Long> startOffsets;
+    Map<TopicPartition, Long> endOffsets;
+    try (KafkaConsumer<byte[], byte[]> consumer =
+        new KafkaConsumer<>(props, new ByteArrayDeserializer(), new ByteArrayDeserializer())) {
+      List<TopicPartition> partitions =
+          consumer.partitionsFor(topic).stream()
+              .map(info -> new TopicPartition(topic, info.partition()))
+              .collect(Collectors.toList());
+      Map<TopicPartition, Long> latestOffsets = consumer.endOffsets(partitions);
+      startOffsets =
+          fromTimestamp < 0
+              ? consumer.beginningOffsets(partitions)
+              : offsetsForTime(consumer, latestOffsets, fromTimestamp);
+      endOffsets =
+          untilTimestamp < 0
+              ? latestOffsets
+              : offsetsForTime(consumer, latestOffsets, untilTimestamp + 1);
+    }
+
+    Map<KafkaTopicPartition, Long> specificStartOffsets = new HashMap<>();
+    Map<Integer, Long> stopOffsets = new HashMap<>();
+    for (Map.Entry<TopicPartition, Long> start : startOffsets.entrySet()) {
+      TopicPartition partition = start.getKey();
+      specificStartOffsets.put(
+          new KafkaTopicPartition(topic, partition.partition()), start.getValue());
+      long stopOffset = endOffsets.get(partition);
+      if (start.getValue() < stopOffset) {
+        stopOffsets.put(partition.partition(), stopOffset);
+      }
+    }
+
+    BoundedKafkaConsumer<T> kafkaConsumer =
+        new BoundedKafkaConsumer<>(
+            topic, new BoundedKafkaDeserializationSchema<>(valueSchema, topic, stopOffsets), props);
+    kafkaConsumer.setStartFromSpecificOffsets(specificStartOffsets);
+    return kafkaConsumer;
+  }
+
+  /** First offset at or after {@code timestamp}, or the end offset if there is none. */
+  private static Map<TopicPartition, Long> offsetsForTime(
+      KafkaConsumer<byte[], byte[]> consumer,
+      Map<TopicPartition, Long> latestOffsets,
+      long timestamp) {
+    Map<TopicPartition, Long> query = new HashMap<>();
+    for (TopicPartition partition : latestOffsets.keySet()) {
+      query.put(partition, timestamp);
+    }
+    Map<TopicPartition, Long> offsets = new HashMap<>();
+    for (Map.Entry<TopicPartition, OffsetAndTimestamp> found :
+        consumer.offsetsForTimes(query).entrySet()) {
+      offsets.put(
+          found.getKey(),
+          found.getValue() == null
+              ? latestOffsets.get(found.getKey())
+              : found.getValue().offset());
+    }
+    return offsets;
+  }
+
+  /**
+   * After a restore, partitions whose restored offset already reached the stop offset are done:
+   * no record of them is read again, so they could not finish the replay otherwise.
+   */
+  @Override
+  public void initializeState(FunctionInitializationContext context) throws Exception {
+    super.initializeState(context);
+    if (!context.isRestored()) {
+      return;
+    }
+    // the state is already registered by the consumer, asking for it by name returns that state
+    ListState<Tuple2<KafkaTopicPartition, Long>> offsetsState =
+        context
+            .getOperatorStateStore()
+            .getUnionListState(
+                new ListStateDescriptor<>(
+                    OFFSETS_STATE_NAME,
+                    TypeInformation.of(new TypeHint<Tuple2<KafkaTopicPartition, Long>>() {})));
+    Map<Integer, Long> restoredOffsets = new HashMap<>();
+    for (Tuple2<KafkaTopicPartition, Long> offset : offsetsState.get()) {
+      if (offset.f0.getTopic().equals(topic)) {
+        restoredOffsets.put(offset.f0.getPartition(), offset.f1);
+      }
+    }
+    boundedSchema.restoreOffsets(restoredOffsets);
+  }
+
+  @Override
+  public void open(Configuration configuration) throws Exception {
+    super.open(configuration);
+    boundedSchema.assignSubtask(
+        getRuntimeContext().getIndexOfThisSubtask(),
+        getRuntimeContext().getNumberOfParallelSubtasks());
+  }
+
+  @Override
+  public void run(SourceContext<T> sourceContext) throws Exception {
+    // a subtask without records to replay would otherwise wait forever for its first record
+    if (boundedSchema.isFinished()) {
+      return;
+    }
+    super.run(sourceContext);
+  }
+}
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.dynamicrules.sources;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+import org.apache.flink.streaming.connectors.kafka.KafkaDeserializationSchema;
+import org.apache.flink.streaming.connectors.kafka.internals.KafkaTopicPartition;
+import org.apache.flink.streaming.connectors.kafka.internals.KafkaTopicPartitionAssigner;
+import org.apache.flink.util.Collector;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+
+/**
+ * Wraps a value schema and stops every partition at its own stop offset, resolved when the job is
+ * submitted. Records at or past the stop offset of their partition are skipped; the end of stream
+ * is signalled once every partition of this source subtask has been read up to its stop offset.
+ *
+ * <p>{@link #isEndOfStream} drops the element it signals the end with, so the end is signalled
+ * with a second copy of the last emitted element, after that element has been collected. This
+ * needs the collector variant of {@code deserialize}, which the Kafka consumer uses since Flink
+ * 1.11.
+ */
+@Slf4j
+class BoundedKafkaDeserializationSchema<T> implements KafkaDeserializationSchema<T> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final DeserializationSchema<T> valueSchema;
+  private final String topic;
+  // partition -> exclusive stop offset, only partitions that have records to replay
+  private final Map<Integer, Long> stopOffsets;
+
+  private transient Map<Integer, Long> restoredOffsets = Collections.emptyMap();
+  private transient Set<Integer> pendingPartitions;
+  private transient T lastElement;
+  private transient T endOfStreamElement;
+
+  BoundedKafkaDeserializationSchema(
+      DeserializationSchema<T> valueSchema, String topic, Map<Integer, Long> stopOffsets) {
+    this.valueSchema = valueSchema;
+    this.topic = topic;
+    this.stopOffsets = stopOffsets;
+  }
+
+  /** Offsets of the last records read before a restore, partitions past their stop are done. */
+  void restoreOffsets(Map<Integer, Long> offsets) {
+    restoredOffsets = offsets;
+  }
+
+  /** Selects the partitions the given source subtask reads, as the Kafka consumer assigns them. */
+  void assignSubtask(int subtaskIndex, int numSubtasks) {
+    pendingPartitions = new HashSet<>();
+    for (Map.Entry<Integer, Long> stop : stopOffsets.entrySet()) {
+      Long restoredOffset = restoredOffsets.get(stop.getKey());
+      if (restoredOffset != null && restoredOffset + 1 >= stop.getValue()) {
+        continue;
+      }
+      KafkaTopicPartition topicPartition = new KafkaTopicPartition(topic, stop.getKey());
+      if (KafkaTopicPartitionAssigner.assign(topicPartition, numSubtasks) == subtaskIndex) {
+        pendingPartitions.add(stop.getKey());
+      }
+    }
+  }
+
+  boolean isFinished() {
+    return pendingPartitions.isEmpty();
+  }
+
+  @Override
+  public void deserialize(ConsumerRecord<byte[], byte[]> record, Collector<T> out)
+      throws Exception {
+    T value = deserialize(record);
+    if (value != null) {
+      out.collect(value);
+      lastElement = value;
+    }
+    if (isFinished() && endOfStreamElement == null && lastElement != null) {
+      endOfStreamElement = lastElement;
+      out.collect(endOfStreamElement);
+    }
+  }
+
+  /** @return the record's value, or null if it is past the stop offset of its partition */
+  @Override
+  public T deserialize(ConsumerRecord<byte[], byte[]> record) throws Exception {
+    int partition = record.partition();
+    Long stopOffset = stopOffsets.get(partition);
+    T value = null;
+    if (stopOffset != null && record.offset() < stopOffset) {
+      value = valueSchema.deserialize(record.value());
+      if (record.offset() + 1 < stopOffset) {
+        return value;
+      }
+    }
+    boolean finishedNow = pendingPartitions.remove(partition) && isFinished();
+    if (finishedNow && value == null && lastElement == null) {
+      log.warn("Replay of {} finished without a valid record, the source keeps running", topic);
+    }
+    return value;
+  }
+
+  @Override
+  public boolean isEndOfStream(T nextElement) {
+    return nextElement != null && nextElement == endOfStreamElement;
+  }
+
+  @Override
+  public TypeInformation<T> getProducedType() {
+    return valueSchema.getProducedType();
+  }
+}
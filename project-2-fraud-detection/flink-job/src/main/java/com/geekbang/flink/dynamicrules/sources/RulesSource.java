@@ -20,6 +20,7 @@ package com.geekbang.flink.dynamicrules.sources;
 
 import static com.geekbang.flink.config.Parameters.GCP_PROJECT_NAME;
 import static com.geekbang.flink.config.Parameters.GCP_PUBSUB_RULES_SUBSCRIPTION;
+import static com.geekbang.flink.config.Parameters.RULES_FILE;
 import static com.geekbang.flink.config.Parameters.RULES_SOURCE;
 import static com.geekbang.flink.config.Parameters.RULES_TOPIC;
 import static com.geekbang.flink.config.Parameters.SOCKET_PORT;
@@ -27,10 +28,17 @@ import static com.geekbang.flink.config.Parameters.SOCKET_PORT;
 import com.geekbang.flink.config.Config;
 import com.geekbang.flink.dynamicrules.KafkaUtils;
 import com.geekbang.flink.dynamicrules.Rule;
+import com.geekbang.flink.dynamicrules.Rule.RuleState;
+import com.geekbang.flink.dynamicrules.RuleParser;
 import com.geekbang.flink.dynamicrules.functions.RuleDeserializer;
 import com.geekbang.flink.dynamicrules.functions.RulesStaticJsonGenerator;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 import org.apache.flink.api.common.serialization.SimpleStringSchema;
@@ -78,6 +86,39 @@ public class RulesSource {
     }
   }
 
+  /**
+   * Loads the fixed rule set for replay mode on the client: one rule per line of {@code
+   * rules-file} or, if no file is given, the static demo rule set.
+   */
+  public static List<Rule> loadReplayRules(Config config) throws IOException {
+    String rulesFile = config.get(RULES_FILE);
+    List<String> ruleStrings =
+        rulesFile.isEmpty()
+            ? RulesStaticJsonGenerator.getRules()
+            : Files.readAllLines(Paths.get(rulesFile), StandardCharsets.UTF_8);
+
+    RuleParser ruleParser = new RuleParser();
+    List<Rule> rules = new ArrayList<>();
+    for (String ruleString : ruleStrings) {
+      if (ruleString.trim().isEmpty()) {
+        continue;
+      }
+      Rule rule = ruleParser.fromString(ruleString);
+      if (rule.getRuleState() == RuleState.SNAPSHOT) {
+        rules.clear();
+        rules.addAll(rule.getRules());
+      } else if (rule.getRuleState() != RuleState.CONTROL) {
+        rules.add(rule);
+      }
+    }
+    // deleted rules would still key transactions and build up state that is never read
+    rules.removeIf(rule -> rule.getRuleState() == RuleState.DELETE);
+    if (rules.isEmpty()) {
+      throw new IllegalArgumentException("No rules to replay in \"" + rulesFile + "\"");
+    }
+    return rules;
+  }
+
   public static DataStream<Rule> stringsStreamToRules(DataStream<String> ruleStrings) {
     return ruleStrings
         .flatMap(new RuleDeserializer())
@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.geekbang.flink.dynamicrules.sources;
+
+import com.geekbang.flink.dynamicrules.JsonMapper;
+import com.geekbang.flink.dynamicrules.Transaction;
+import com.geekbang.flink.dynamicrules.TransactionCsvDecoder;
+import java.nio.charset.StandardCharsets;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.flink.api.common.serialization.DeserializationSchema;
+import org.apache.flink.api.common.typeinfo.TypeInformation;
+
+/** Decodes transactions inside the Kafka consumer; malformed records are logged and skipped. */
+@Slf4j
+class TransactionDeserializationSchema implements DeserializationSchema<Transaction> {
+
+  private static final long serialVersionUID = 1L;
+
+  private final TransactionsSource.Format format;
+
+  private transient JsonMapper<Transaction> jsonMapper;
+  private transient TransactionCsvDecoder csvDecoder;
+
+  TransactionDeserializationSchema(TransactionsSource.Format format) {
+    this.format = format;
+  }
+
+  @Override
+  public Transaction deserialize(byte[] message) {
+    String line = new String(message, StandardCharsets.UTF_8);
+    try {
+      if (format == TransactionsSource.Format.CSV) {
+        if (csvDecoder == null) {
+          csvDecoder = new TransactionCsvDecoder();
+        }
+        return csvDecoder.decode(line);
+      }
+      if (jsonMapper == null) {
+        jsonMapper = new JsonMapper<>(Transaction.class);
+      }
+      return jsonMapper.fromString(line);
+    } catch (Exception e) {
+      log.warn("Failed parsing transaction {}, dropping it: ", line, e);
+      // null records are skipped by the Kafka consumer
+      return null;
+    }
+  }
+
+  @Override
+  public boolean isEndOfStream(Transaction nextElement) {
+    return false;
+  }
+
+  @Override
+  public TypeInformation<Transaction> getProducedType() {
+    return TypeInformation.of(Transaction.class);
+  }
+}
@@ -18,8 +18,16 @@
 
 package com.geekbang.flink.dynamicrules.sources;
 
+import static com.geekbang.flink.config.Parameters.DATA_FILE;
+import static com.geekbang.flink.config.Parameters.DATA_FORMAT;
 import static com.geekbang.flink.config.Parameters.DATA_TOPIC;
+import static com.geekbang.flink.config.Parameters.OUT_OF_ORDERNESS;
+import static com.geekbang.flink.config.Parameters.PARTITION_WATERMARKS;
 import static com.geekbang.flink.config.Parameters.RECORDS_PER_SECOND;
+import static com.geekbang.flink.config.Parameters.REPLAY_FROM;
+import static com.geekbang.flink.config.Parameters.REPLAY_UNTIL;
+import static com.geekbang.flink.config.Parameters.SOURCE_IDLE_TIMEOUT;
+import static com.geekbang.flink.config.Parameters.SOURCE_PARALLELISM;
 import static com.geekbang.flink.config.Parameters.TRANSACTIONS_SOURCE;
 
 import com.geekbang.flink.config.Config;
@@ -28,47 +36,156 @@ import com.geekbang.flink.dynamicrules.Transaction;
 import com.geekbang.flink.dynamicrules.functions.JsonDeserializer;
 import com.geekbang.flink.dynamicrules.functions.JsonGeneratorWrapper;
 import com.geekbang.flink.dynamicrules.functions.TimeStamper;
+import com.geekbang.flink.dynamicrules.functions.TransactionCsvDeserializer;
 import com.geekbang.flink.dynamicrules.functions.TransactionsGenerator;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
 import java.util.Properties;
-import org.apache.flink.api.common.serialization.SimpleStringSchema;
+import org.apache.flink.api.common.eventtime.WatermarkStrategy;
 import org.apache.flink.streaming.api.datastream.DataStream;
-import org.apache.flink.streaming.api.functions.source.SourceFunction;
+import org.apache.flink.streaming.api.environment.StreamExecutionEnvironment;
 import org.apache.flink.streaming.connectors.kafka.FlinkKafkaConsumer011;
 
 public class TransactionsSource {
 
-  public static SourceFunction<String> createTransactionsSource(Config config) {
+  private static final DateTimeFormatter REPLAY_TIME_FORMATTER =
+      DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+          .withLocale(Locale.US)
+          .withZone(ZoneOffset.UTC);
+
+  /**
+   * Creates the timestamped transactions stream.
+   *
+   * <p>Kafka records are deserialized inside the consumer, so that watermarks can be generated per
+   * partition and idle partitions do not hold back event time ({@code partition-watermarks},
+   * {@code source-idle-timeout}). The other sources assign watermarks after deserialization.
+   *
+   * <p>In replay mode the stream is bounded: it finishes once the file is read or the Kafka
+   * consumer has read every partition up to the offset it had when the job was submitted (or up to
+   * the first record after {@code replay-until}), so the final watermark fires all pending
+   * event-time timers and the job runs to completion.
+   */
+  public static DataStream<Transaction> createTransactionsStream(
+      StreamExecutionEnvironment env, Config config, boolean replay) {
 
     String sourceType = config.get(TRANSACTIONS_SOURCE);
     TransactionsSource.Type transactionsSourceType =
         TransactionsSource.Type.valueOf(sourceType.toUpperCase());
+    WatermarkStrategy<Transaction> watermarkStrategy = createWatermarkStrategy(config);
+
+    switch (transactionsSourceType) {
+      case KAFKA:
+        boolean partitionWatermarks = config.get(PARTITION_WATERMARKS);
+        FlinkKafkaConsumer011<Transaction> kafkaConsumer = createKafkaConsumer(config, replay);
+        if (partitionWatermarks) {
+          kafkaConsumer.assignTimestampsAndWatermarks(watermarkStrategy);
+        }
+        DataStream<Transaction> kafkaTransactions =
+            env.addSource(kafkaConsumer)
+                .name(transactionsSourceType.getName())
+                .setParallelism(config.get(SOURCE_PARALLELISM))
+                .flatMap(new TimeStamper<>())
+                .returns(Transaction.class)
+                .name("Transactions Deserialization");
+        return partitionWatermarks
+            ? kafkaTransactions
+            : kafkaTransactions.assignTimestampsAndWatermarks(watermarkStrategy);
+      case FILE:
+        DataStream<String> lines =
+            env.readTextFile(config.get(DATA_FILE)).name(transactionsSourceType.getName());
+        return stringsStreamToTransactions(lines, getFormat(config))
+            .assignTimestampsAndWatermarks(watermarkStrategy);
+      case GENERATOR:
+        if (replay) {
+          throw new IllegalArgumentException(
+              "Source \"" + transactionsSourceType + "\" cannot be replayed, use FILE or KAFKA");
+        }
+        int transactionsPerSecond = config.get(RECORDS_PER_SECOND);
+        DataStream<String> generated =
+            env.addSource(
+                    new JsonGeneratorWrapper<>(new TransactionsGenerator(transactionsPerSecond)))
+                .name(transactionsSourceType.getName())
+                .setParallelism(config.get(SOURCE_PARALLELISM));
+        // the local generator always produces JSON
+        return stringsStreamToTransactions(generated, Format.JSON)
+            .assignTimestampsAndWatermarks(watermarkStrategy);
+      default:
+        throw new IllegalArgumentException("Source \"" + transactionsSourceType + "\" unknown.");
+    }
+  }
+
+  private static FlinkKafkaConsumer011<Transaction> createKafkaConsumer(
+      Config config, boolean replay) {
+    Properties kafkaProps = KafkaUtils.initConsumerProperties(config);
+    String transactionsTopic = config.get(DATA_TOPIC);
+    TransactionDeserializationSchema schema = new TransactionDeserializationSchema(getFormat(config));
 
-    if (transactionsSourceType == Type.KAFKA) {
-      Properties kafkaProps = KafkaUtils.initConsumerProperties(config);
-      String transactionsTopic = config.get(DATA_TOPIC);
-      FlinkKafkaConsumer011<String> kafkaConsumer =
-          new FlinkKafkaConsumer011<>(transactionsTopic, new SimpleStringSchema(), kafkaProps);
+    if (!replay) {
+      FlinkKafkaConsumer011<Transaction> kafkaConsumer =
+          new FlinkKafkaConsumer011<>(transactionsTopic, schema, kafkaProps);
       kafkaConsumer.setStartFromLatest();
       return kafkaConsumer;
-    } else {
-      int transactionsPerSecond = config.get(RECORDS_PER_SECOND);
-      return new JsonGeneratorWrapper<>(new TransactionsGenerator(transactionsPerSecond));
     }
+
+    String replayFrom = config.get(REPLAY_FROM);
+    String replayUntil = config.get(REPLAY_UNTIL);
+    return BoundedKafkaConsumer.create(
+        transactionsTopic,
+        schema,
+        kafkaProps,
+        replayFrom.isEmpty() ? -1 : parseReplayTime(replayFrom),
+        replayUntil.isEmpty() ? -1 : parseReplayTime(replayUntil));
   }
 
-  public static DataStream<Transaction> stringsStreamToTransactions(
-      DataStream<String> transactionStrings) {
-    return transactionStrings
-        .flatMap(new JsonDeserializer<>(Transaction.class))
-        .returns(Transaction.class)
+  private static WatermarkStrategy<Transaction> createWatermarkStrategy(Config config) {
+    WatermarkStrategy<Transaction> watermarkStrategy =
+        WatermarkStrategy.<Transaction>forBoundedOutOfOrderness(
+                Duration.ofMillis(config.get(OUT_OF_ORDERNESS)))
+            .withTimestampAssigner((transaction, timestamp) -> transaction.getEventTime());
+    int idleTimeout = config.get(SOURCE_IDLE_TIMEOUT);
+    return idleTimeout > 0
+        ? watermarkStrategy.withIdleness(Duration.ofMillis(idleTimeout))
+        : watermarkStrategy;
+  }
+
+  private static long parseReplayTime(String time) {
+    return ZonedDateTime.parse(time, REPLAY_TIME_FORMATTER).toInstant().toEpochMilli();
+  }
+
+  private static DataStream<Transaction> stringsStreamToTransactions(
+      DataStream<String> transactionStrings, Format format) {
+    DataStream<Transaction> parsed;
+    if (format == Format.CSV) {
+      parsed = transactionStrings.flatMap(new TransactionCsvDeserializer());
+    } else {
+      parsed =
+          transactionStrings
+              .flatMap(new JsonDeserializer<>(Transaction.class))
+              .returns(Transaction.class);
+    }
+    return parsed
         .flatMap(new TimeStamper<>())
         .returns(Transaction.class)
         .name("Transactions Deserialization");
   }
 
+  private static Format getFormat(Config config) {
+    return Format.valueOf(config.get(DATA_FORMAT).toUpperCase());
+  }
+
+  /** Encoding of the transaction records read from Kafka or files. */
+  public enum Format {
+    JSON,
+    CSV
+  }
+
   public enum Type {
     GENERATOR("Transactions Source (generated locally)"),
-    KAFKA("Transactions Source (Kafka)");
+    KAFKA("Transactions Source (Kafka)"),
+    FILE("Transactions Source (File)");
 
     private String name;
 
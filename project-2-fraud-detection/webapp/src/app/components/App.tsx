@@ -134,14 +134,21 @@ export const App: FC = () => {
     });
   };
 
-  const handleLatencyMessage = (latency: string) => {
+  // Alerts arrive in batches; only the latest alert per rule is displayed anyway.
+  const handleAlertsMessage = (batch: Alert[]) => {
+    const latestPerRule = new Map<number, Alert>();
+    batch.forEach(alert => latestPerRule.set(alert.ruleId, alert));
+    latestPerRule.forEach(handleMessage);
+  };
+
+  const handleLatencyMessage = (latencies: number[]) => {
     // tslint:disable-next-line: no-console
-    console.info(latency);
+    console.info(latencies);
   };
 
   return (
     <>
-      <SockJsClient url="/ws/backend" topics={["/topic/alerts"]} onMessage={handleMessage} />
+      <SockJsClient url="/ws/backend" topics={["/topic/alerts"]} onMessage={handleAlertsMessage} />
       <SockJsClient url="/ws/backend" topics={["/topic/latency"]} onMessage={handleLatencyMessage} />
       <LayoutContainer>
         <Header setRules={setRules} />
@@ -6,11 +6,10 @@ import {
   faMoneyBill,
   faQuestionCircle,
   IconDefinition,
-  faRocket,
 } from "@fortawesome/free-solid-svg-icons";
 import { Badge, Card, CardBody, CardHeader, Col } from "reactstrap";
 import styled from "styled-components/macro";
-import { Transaction } from "../interfaces";
+import { Transaction, TransactionsFrame } from "../interfaces";
 import Slider from "react-rangeslider";
 import { useLocalStorage, useUpdateEffect } from "react-use";
 import { AutoSizer, List, ListRowRenderer } from "react-virtualized";
@@ -94,26 +93,6 @@ export const Beneficiary = styled(FlexSpan)`
   justify-content: flex-end;
 `;
 
-const TransactionsOverlay = styled.div`
-  position: absolute;
-  z-index: 10;
-  background: rgba(0, 0, 0, 0.7);
-  top: 0;
-  left: 0;
-  width: 100%;
-  height: 100%;
-  display: flex;
-  justify-content: center;
-  align-items: center;
-  text-align: center;
-  color: white;
-`;
-
-const Rocket = styled.span`
-  font-size: 500%;
-  width: 100%;
-`;
-
 const getFakeValue = (value: number) => {
   return value <= 10 ? value : value <= 20 ? (value - 10) * 10 : (value - 20) * 100;
 };
@@ -122,7 +101,11 @@ export const Transactions = React.memo(
   forwardRef<HTMLDivElement, {}>((props, ref) => {
     const list = useRef<List>(null);
     const [transactions, setTransactions] = useState<Transaction[]>([]);
-    const addTransaction = (transaction: Transaction) => setTransactions(state => [...state.slice(-33), transaction]);
+    const [ratePerSecond, setRatePerSecond] = useState(0);
+    const addFrame = (frame: TransactionsFrame) => {
+      setTransactions(state => [...state, ...frame.transactions].slice(-34));
+      setRatePerSecond(frame.ratePerSecond);
+    };
 
     const [generatorSpeed, setGeneratorSpeed] = useLocalStorage("generatorSpeed", 1);
     const handleSliderChange = (val: number) => setGeneratorSpeed(val);
@@ -149,7 +132,7 @@ export const Transactions = React.memo(
 
     return (
       <>
-        <SockJsClient url="/ws/backend" topics={["/topic/transactions"]} onMessage={addTransaction} />
+        <SockJsClient url="/ws/backend" topics={["/topic/transactions"]} onMessage={addFrame} />
         <Col xs="2" className="d-flex flex-column px-0">
           <TransactionsCard innerRef={ref}>
             <CardHeader className="d-flex align-items-center py-0 justify-content-between">
@@ -163,20 +146,11 @@ export const Transactions = React.memo(
                   step={1}
                 />
               </div>
-              <span>{getFakeValue(generatorSpeed)}</span>
+              <span title="Consumed transactions per second">
+                {getFakeValue(generatorSpeed)} ({Math.round(ratePerSecond)}/s)
+              </span>
             </CardHeader>
             <CardBody className="p-0 mb-0" style={{ pointerEvents: "none" }}>
-              <TransactionsOverlay hidden={generatorSpeed < 16}>
-                <div>
-                  <Rocket>
-                    <FontAwesomeIcon icon={faRocket} />
-                    {/* <span role="img" aria-label="rocket">
-                      🚀
-                    </span> */}
-                  </Rocket>
-                  <h2>Transactions per-second too high to render...</h2>
-                </div>
-              </TransactionsOverlay>
               <TransactionsHeading className="px-2 py-1">
                 <span>Payer</span>
                 <span>Amount</span>
@@ -16,3 +16,12 @@ export interface Transaction {
   paymentType: string;
   transactionId: number;
 }
+
+export interface TransactionsFrame {
+  transactions: Transaction[];
+  count: number;
+  amount: number;
+  ratePerSecond: number;
+  totalCount: number;
+  totalAmount: number;
+}
@@ -35,6 +35,15 @@ public class KafkaProducerConfig {
   @Value("${kafka.bootstrap-servers}")
   private String bootstrapServers;
 
+  @Value("${kafka.producer.transactions.batch-size}")
+  private int transactionsBatchSize;
+
+  @Value("${kafka.producer.transactions.linger-ms}")
+  private int transactionsLingerMs;
+
+  @Value("${kafka.producer.transactions.compression-type}")
+  private String transactionsCompressionType;
+
   @Bean
   public Map<String, Object> producerConfigsJson() {
     Map<String, Object> props = new HashMap<>();
@@ -44,6 +53,17 @@ public class KafkaProducerConfig {
     return props;
   }
 
+  @Bean
+  public Map<String, Object> producerConfigsTransactions() {
+    Map<String, Object> props = new HashMap<>(producerConfigsJson());
+    // generated transactions are sent in bulk: fill large, compressed batches
+    props.put(ProducerConfig.BATCH_SIZE_CONFIG, transactionsBatchSize);
+    props.put(ProducerConfig.LINGER_MS_CONFIG, transactionsLingerMs);
+    props.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, transactionsCompressionType);
+    props.put(ProducerConfig.ACKS_CONFIG, "1");
+    return props;
+  }
+
   @Bean
   public Map<String, Object> producerConfigsString() {
     Map<String, Object> props = new HashMap<>();
@@ -64,6 +84,16 @@ public class KafkaProducerConfig {
     return new KafkaTemplate<>(producerFactoryForJson());
   }
 
+  @Bean
+  public ProducerFactory<String, Object> producerFactoryForTransactions() {
+    return new DefaultKafkaProducerFactory<>(producerConfigsTransactions());
+  }
+
+  @Bean
+  public KafkaTemplate<String, Object> kafkaTemplateForTransactions() {
+    return new KafkaTemplate<>(producerFactoryForTransactions());
+  }
+
   // Strings
   @Bean
   public ProducerFactory<String, String> producerFactoryForString() {
@@ -17,16 +17,33 @@
 
 package com.ververica.demo.backend.configurations;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator.OverflowStrategy;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
 
+/**
+ * STOMP over WebSocket for the UI. The broker configuration is imported through {@link
+ * DroppingMessageBrokerConfiguration} instead of {@code @EnableWebSocketMessageBroker}.
+ */
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+  @Value("${web-socket.subscriber.send-time-limit-ms}")
+  private int sendTimeLimit;
+
+  @Value("${web-socket.subscriber.send-buffer-size-limit}")
+  private int sendBufferSizeLimit;
+
   @Override
   public void registerStompEndpoints(StompEndpointRegistry registry) {
     registry.addEndpoint("/ws/backend").withSockJS();
@@ -36,4 +53,37 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
   public void configureMessageBroker(MessageBrokerRegistry registry) {
     registry.enableSimpleBroker("/topic");
   }
+
+  @Override
+  public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+    registration.setSendTimeLimit(sendTimeLimit);
+    registration.setSendBufferSizeLimit(sendBufferSizeLimit);
+  }
+
+  /**
+   * Frames to a browser that cannot keep up are buffered per session up to {@code
+   * send-buffer-size-limit} bytes, after which the oldest buffered frames of that session are
+   * dropped. Slow subscribers therefore lose frames instead of being disconnected or holding back
+   * the broker for everybody else.
+   *
+   * <p>The overflow strategy has to be set where {@link SubProtocolWebSocketHandler} decorates the
+   * session: a decorator around the handler would itself be wrapped in the default decorator,
+   * which disconnects slow sessions before the inner buffer ever fills.
+   */
+  @Configuration
+  static class DroppingMessageBrokerConfiguration
+      extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler() {
+      return new SubProtocolWebSocketHandler(clientInboundChannel(), clientOutboundChannel()) {
+        @Override
+        protected WebSocketSession decorateSession(WebSocketSession session) {
+          return new ConcurrentWebSocketSessionDecorator(
+              session, getSendTimeLimit(), getSendBufferSizeLimit(), OverflowStrategy.DROP);
+        }
+      };
+    }
+  }
 }
@@ -23,7 +23,9 @@ import com.ververica.demo.backend.datasource.Transaction;
 import com.ververica.demo.backend.entities.Rule;
 import com.ververica.demo.backend.exceptions.RuleNotFoundException;
 import com.ververica.demo.backend.model.Alert;
+import com.ververica.demo.backend.model.AlertHistoryPage;
 import com.ververica.demo.backend.repositories.RuleRepository;
+import com.ververica.demo.backend.services.AlertHistoryService;
 import com.ververica.demo.backend.services.KafkaTransactionsPusher;
 import java.math.BigDecimal;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -32,6 +34,7 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -40,8 +43,12 @@ public class AlertsController {
 
   private final RuleRepository repository;
   private final KafkaTransactionsPusher transactionsPusher;
+  private final AlertHistoryService alertHistory;
   private SimpMessagingTemplate simpSender;
 
+  @Value("${alerts.history.max-page-size}")
+  private int maxPageSize;
+
   @Value("${web-socket.topic.alerts}")
   private String alertsWebSocketTopic;
 
@@ -49,9 +56,11 @@ public class AlertsController {
   public AlertsController(
       RuleRepository repository,
       KafkaTransactionsPusher transactionsPusher,
+      AlertHistoryService alertHistory,
       SimpMessagingTemplate simpSender) {
     this.repository = repository;
     this.transactionsPusher = transactionsPusher;
+    this.alertHistory = alertHistory;
     this.simpSender = simpSender;
   }
 
@@ -72,4 +81,29 @@ public class AlertsController {
 
     return alert;
   }
+
+  /**
+   * Pages through the alert history, newest first. Pass the returned {@code nextBeforeId} as
+   * {@code beforeId} to get the next page; {@code from} and {@code to} are epoch milliseconds of
+   * the triggering event.
+   */
+  @GetMapping("/alerts")
+  AlertHistoryPage alerts(
+      @RequestParam(required = false) Integer ruleId,
+      @RequestParam(required = false) String key,
+      @RequestParam(required = false) Long from,
+      @RequestParam(required = false) Long to,
+      @RequestParam(required = false) Long beforeId,
+      @RequestParam(defaultValue = "50") int limit) {
+    return alertHistory.query(
+        ruleId, key, from, to, beforeId, Math.max(1, Math.min(limit, maxPageSize)));
+  }
+
+  @GetMapping("/rules/{id}/alerts")
+  AlertHistoryPage ruleAlerts(
+      @PathVariable Integer id,
+      @RequestParam(required = false) Long beforeId,
+      @RequestParam(defaultValue = "50") int limit) {
+    return alerts(id, null, null, null, beforeId, limit);
+  }
 }
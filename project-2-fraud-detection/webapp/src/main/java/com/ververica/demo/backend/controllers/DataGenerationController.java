@@ -17,16 +17,13 @@
 
 package com.ververica.demo.backend.controllers;
 
-import com.ververica.demo.backend.datasource.DemoTransactionsGenerator;
-import com.ververica.demo.backend.datasource.TransactionsGenerator;
+import com.ververica.demo.backend.datasource.ParallelTransactionsGenerator;
+import com.ververica.demo.backend.model.GeneratorStats;
 import com.ververica.demo.backend.services.KafkaTransactionsPusher;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
-import org.springframework.kafka.listener.MessageListenerContainer;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RestController;
@@ -35,25 +32,16 @@ import org.springframework.web.bind.annotation.RestController;
 @Slf4j
 public class DataGenerationController {
 
-  private TransactionsGenerator transactionsGenerator;
-  private KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
-
-  private ExecutorService executor = Executors.newSingleThreadExecutor();
-  private boolean generatingTransactions = false;
-  private boolean listenerContainerRunning = true;
-
-  @Value("${kafka.listeners.transactions.id}")
-  private String transactionListenerId;
-
-  @Value("${transactionsRateDisplayLimit}")
-  private int transactionsRateDisplayLimit;
+  private ParallelTransactionsGenerator transactionsGenerator;
+  private KafkaTransactionsPusher transactionsPusher;
 
   @Autowired
   public DataGenerationController(
       KafkaTransactionsPusher transactionsPusher,
-      KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry) {
-    transactionsGenerator = new DemoTransactionsGenerator(transactionsPusher, 1);
-    this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+      @Value("${generator.max-threads}") int generatorMaxThreads) {
+    transactionsGenerator =
+        new ParallelTransactionsGenerator(transactionsPusher, generatorMaxThreads);
+    this.transactionsPusher = transactionsPusher;
   }
 
   @GetMapping("/api/startTransactionsGeneration")
@@ -63,41 +51,44 @@ public class DataGenerationController {
   }
 
   private void generateTransactions() {
-    if (!generatingTransactions) {
-      executor.submit(transactionsGenerator);
-      generatingTransactions = true;
-    }
+    transactionsGenerator.start();
   }
 
   @GetMapping("/api/stopTransactionsGeneration")
   public void stopTransactionsGeneration() {
     transactionsGenerator.cancel();
-    generatingTransactions = false;
     log.info("{}", "stopTransactionsGeneration called");
   }
 
+  @PreDestroy
+  public void close() {
+    transactionsGenerator.close();
+  }
+
   @GetMapping("/api/generatorSpeed/{speed}")
   public void setGeneratorSpeed(@PathVariable Long speed) {
     log.info("Generator speed change request: " + speed);
     if (speed <= 0) {
       transactionsGenerator.cancel();
-      generatingTransactions = false;
       return;
     } else {
       generateTransactions();
     }
 
-    MessageListenerContainer listenerContainer =
-        kafkaListenerEndpointRegistry.getListenerContainer(transactionListenerId);
-    if (speed > transactionsRateDisplayLimit) {
-      listenerContainer.stop();
-      listenerContainerRunning = false;
-    } else if (!listenerContainerRunning) {
-      listenerContainer.start();
-    }
-
     if (transactionsGenerator != null) {
       transactionsGenerator.adjustMaxRecordsPerSecond(speed);
     }
   }
+
+  @GetMapping("/api/generatorStats")
+  public GeneratorStats getGeneratorStats() {
+    return new GeneratorStats(
+        transactionsGenerator.isRunning(),
+        transactionsGenerator.getThreads(),
+        transactionsGenerator.getMaxRecordsPerSecond(),
+        transactionsGenerator.getAchievedRate(),
+        transactionsPusher.getSent(),
+        transactionsPusher.getFailed(),
+        transactionsPusher.getInFlight());
+  }
 }
@@ -21,23 +21,36 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ververica.demo.backend.entities.Rule;
 import com.ververica.demo.backend.exceptions.RuleNotFoundException;
+import com.ververica.demo.backend.model.RuleCostEstimate;
+import com.ververica.demo.backend.model.RuleCostEstimate.Verdict;
 import com.ververica.demo.backend.model.RulePayload;
 import com.ververica.demo.backend.repositories.RuleRepository;
 import com.ververica.demo.backend.services.FlinkRulesService;
+import com.ververica.demo.backend.services.RuleCostEstimator;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
 
 @RestController
 @RequestMapping("/api")
+@Slf4j
 class RuleRestController {
 
   private final RuleRepository repository;
   private final FlinkRulesService flinkRulesService;
+  private final RuleCostEstimator costEstimator;
 
-  RuleRestController(RuleRepository repository, FlinkRulesService flinkRulesService) {
+  RuleRestController(
+      RuleRepository repository,
+      FlinkRulesService flinkRulesService,
+      RuleCostEstimator costEstimator) {
     this.repository = repository;
     this.flinkRulesService = flinkRulesService;
+    this.costEstimator = costEstimator;
   }
 
   private final ObjectMapper mapper = new ObjectMapper();
@@ -47,8 +60,27 @@ class RuleRestController {
     return repository.findAll();
   }
 
+  /**
+   * Estimates the state the rule would keep in Flink without deploying it, see {@link
+   * RuleCostEstimator}.
+   */
+  @PostMapping("/rules/dryRun")
+  RuleCostEstimate dryRun(@RequestBody Rule rule) throws IOException {
+    return costEstimator.estimate(mapper.readValue(rule.getRulePayload(), RulePayload.class));
+  }
+
   @PostMapping("/rules")
-  Rule newRule(@RequestBody Rule newRule) throws IOException {
+  Rule newRule(@RequestBody Rule newRule, @RequestParam(defaultValue = "false") boolean force)
+      throws IOException {
+    RuleCostEstimate estimate =
+        costEstimator.estimate(mapper.readValue(newRule.getRulePayload(), RulePayload.class));
+    if (estimate.getVerdict() == Verdict.REJECT && !force) {
+      throw new ResponseStatusException(
+          HttpStatus.UNPROCESSABLE_ENTITY, String.join(", ", estimate.getMessages()));
+    }
+    if (estimate.getVerdict() == Verdict.WARN || estimate.getVerdict() == Verdict.REJECT) {
+      log.warn("Deploying rule {} despite its estimated cost: {}", newRule, estimate);
+    }
     Rule savedRule = repository.save(newRule);
     Integer id = savedRule.getId();
     RulePayload payload = mapper.readValue(savedRule.getRulePayload(), RulePayload.class);
@@ -61,11 +93,8 @@ class RuleRestController {
   }
 
   @GetMapping("/rules/pushToFlink")
-  void pushToFlink() {
-    List<Rule> rules = repository.findAll();
-    for (Rule rule : rules) {
-      flinkRulesService.addRule(rule);
-    }
+  void pushToFlink() throws IOException {
+    flinkRulesService.replaceRules(repository.findAll());
   }
 
   @GetMapping("/rules/{id}")
@@ -80,11 +109,8 @@ class RuleRestController {
   }
 
   @DeleteMapping("/rules")
-  void deleteAllRules() throws JsonProcessingException {
-    List<Rule> rules = repository.findAll();
-    for (Rule rule : rules) {
-      repository.deleteById(rule.getId());
-      flinkRulesService.deleteRule(rule.getId());
-    }
+  void deleteAllRules() throws IOException {
+    repository.deleteAll();
+    flinkRulesService.replaceRules(Collections.emptyList());
   }
 }
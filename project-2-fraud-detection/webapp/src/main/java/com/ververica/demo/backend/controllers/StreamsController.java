@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ververica.demo.backend.controllers;
+
+import com.ververica.demo.backend.services.LiveStreamService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Server-sent event alternatives to the WebSocket topics, filtered on the server. Every event
+ * holds a JSON array of the messages received since the previous one.
+ */
+@RestController
+@RequestMapping("/api/stream")
+public class StreamsController {
+
+  private final LiveStreamService liveStreams;
+
+  @Autowired
+  public StreamsController(LiveStreamService liveStreams) {
+    this.liveStreams = liveStreams;
+  }
+
+  @GetMapping(path = "/alerts", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  SseEmitter alerts(
+      @RequestParam(required = false) Integer ruleId,
+      @RequestParam(required = false) String key) {
+    return liveStreams.subscribeToAlerts(ruleId, key);
+  }
+
+  @GetMapping(path = "/transactions", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+  SseEmitter transactions(
+      @RequestParam(required = false) Long payeeId,
+      @RequestParam(required = false) Long beneficiaryId) {
+    return liveStreams.subscribeToTransactions(payeeId, beneficiaryId);
+  }
+}
@@ -19,6 +19,7 @@ package com.ververica.demo.backend.datasource;
 
 import java.math.BigDecimal;
 import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 
@@ -34,6 +35,11 @@ public class DemoTransactionsGenerator extends TransactionsGenerator {
     super(consumer, maxRecordsPerSecond);
   }
 
+  public DemoTransactionsGenerator(
+      Consumer<Transaction> consumer, int maxRecordsPerSecond, AtomicLong transactionIds) {
+    super(consumer, maxRecordsPerSecond, transactionIds);
+  }
+
   protected Transaction randomEvent(SplittableRandom rnd) {
     Transaction transaction = super.randomEvent(rnd);
     long now = System.currentTimeMillis();
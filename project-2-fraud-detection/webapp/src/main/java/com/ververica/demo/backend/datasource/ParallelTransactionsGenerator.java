@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ververica.demo.backend.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Runs transaction generators on up to {@code maxThreads} threads, one more thread per {@link
+ * #RECORDS_PER_SECOND_PER_THREAD}. Each thread has its own throttler and a disjoint transaction id
+ * range, so the threads do not contend. Only the first thread injects the periodic fraud patterns
+ * of {@link DemoTransactionsGenerator}, which keeps the alert rate independent of the thread count.
+ */
+@Slf4j
+public class ParallelTransactionsGenerator {
+
+  private static final long RECORDS_PER_SECOND_PER_THREAD = 5_000;
+  private static final long RATE_INTERVAL_SECONDS = 5;
+  private static final long STOP_TIMEOUT_SECONDS = 10;
+
+  private final Consumer<Transaction> consumer;
+  private final int maxThreads;
+  private final AtomicLong[] transactionIds;
+  private final ScheduledExecutorService rateReporter;
+  private final LongAdder generated = new LongAdder();
+
+  private final List<TransactionsGenerator> generators = new ArrayList<>();
+  private ExecutorService executor;
+  private boolean running = false;
+  private long maxRecordsPerSecond = 1;
+
+  private long lastCount;
+  private long lastNanos = System.nanoTime();
+  private volatile double achievedRate;
+
+  public ParallelTransactionsGenerator(Consumer<Transaction> consumer, int maxThreads) {
+    this.consumer =
+        transaction -> {
+          consumer.accept(transaction);
+          generated.increment();
+        };
+    this.maxThreads = maxThreads;
+    this.transactionIds = new AtomicLong[maxThreads];
+    long idRangeSize = Long.MAX_VALUE / maxThreads;
+    for (int i = 0; i < maxThreads; i++) {
+      transactionIds[i] = new AtomicLong(i * idRangeSize);
+    }
+    this.rateReporter = Executors.newSingleThreadScheduledExecutor();
+    rateReporter.scheduleAtFixedRate(
+        this::updateAchievedRate,
+        RATE_INTERVAL_SECONDS,
+        RATE_INTERVAL_SECONDS,
+        TimeUnit.SECONDS);
+  }
+
+  public synchronized boolean isRunning() {
+    return running;
+  }
+
+  public synchronized void start() {
+    if (running) {
+      return;
+    }
+    running = true;
+    startGenerators();
+  }
+
+  public synchronized void cancel() {
+    running = false;
+    stopGenerators();
+  }
+
+  /** Stops the generators and the rate reporting, the instance cannot be restarted. */
+  public synchronized void close() {
+    cancel();
+    rateReporter.shutdownNow();
+  }
+
+  public synchronized void adjustMaxRecordsPerSecond(long maxRecordsPerSecond) {
+    this.maxRecordsPerSecond = maxRecordsPerSecond;
+    if (!running) {
+      return;
+    }
+    if (threadsFor(maxRecordsPerSecond) != generators.size()) {
+      // the old generators are stopped first, the id sequences are shared
+      stopGenerators();
+      startGenerators();
+    } else {
+      for (int i = 0; i < generators.size(); i++) {
+        generators.get(i).adjustMaxRecordsPerSecond(rateOf(i, generators.size()));
+      }
+    }
+  }
+
+  public synchronized long getMaxRecordsPerSecond() {
+    return maxRecordsPerSecond;
+  }
+
+  public synchronized int getThreads() {
+    return generators.size();
+  }
+
+  /** Transactions handed to the consumer per second, averaged over the last few seconds. */
+  public double getAchievedRate() {
+    return achievedRate;
+  }
+
+  private void startGenerators() {
+    int threads = threadsFor(maxRecordsPerSecond);
+    executor = Executors.newFixedThreadPool(threads);
+    for (int i = 0; i < threads; i++) {
+      int rate = (int) rateOf(i, threads);
+      TransactionsGenerator generator =
+          i == 0
+              ? new DemoTransactionsGenerator(consumer, rate, transactionIds[i])
+              : new TransactionsGenerator(consumer, rate, transactionIds[i]);
+      generators.add(generator);
+      executor.submit(generator);
+    }
+    log.info("Generating {} tx/s on {} threads", maxRecordsPerSecond, threads);
+  }
+
+  private void stopGenerators() {
+    generators.forEach(TransactionsGenerator::cancel);
+    generators.clear();
+    if (executor == null) {
+      return;
+    }
+    // generators blocked on Kafka back pressure only notice the cancellation when interrupted
+    executor.shutdownNow();
+    try {
+      if (!executor.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        log.warn("Generator threads did not stop within {} s", STOP_TIMEOUT_SECONDS);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    executor = null;
+  }
+
+  private int threadsFor(long recordsPerSecond) {
+    long threads =
+        (recordsPerSecond + RECORDS_PER_SECOND_PER_THREAD - 1) / RECORDS_PER_SECOND_PER_THREAD;
+    return (int) Math.max(1, Math.min(maxThreads, threads));
+  }
+
+  /** Splits the target rate evenly, the first threads take the remainder. */
+  private long rateOf(int thread, int threads) {
+    long rate = maxRecordsPerSecond / threads + (thread < maxRecordsPerSecond % threads ? 1 : 0);
+    return Math.max(1, rate);
+  }
+
+  private void updateAchievedRate() {
+    long count = generated.sum();
+    long now = System.nanoTime();
+    achievedRate = (count - lastCount) * 1e9 / (now - lastNanos);
+    lastCount = count;
+    lastNanos = now;
+    if (isRunning()) {
+      log.info(
+          "Generated {} tx/s (target {} tx/s)",
+          String.format("%.1f", achievedRate),
+          getMaxRecordsPerSecond());
+    }
+  }
+}
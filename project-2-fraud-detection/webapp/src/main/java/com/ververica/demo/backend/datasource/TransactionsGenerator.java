@@ -21,6 +21,7 @@ import com.ververica.demo.backend.datasource.Transaction.PaymentType;
 import java.math.BigDecimal;
 import java.util.SplittableRandom;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 
@@ -36,13 +37,25 @@ public class TransactionsGenerator implements Runnable {
 
   private volatile boolean running = true;
   private Integer maxRecordsPerSecond;
+  // sequential ids of an id range, or null for random ids
+  private final AtomicLong transactionIds;
 
   private Consumer<Transaction> consumer;
 
   public TransactionsGenerator(Consumer<Transaction> consumer, int maxRecordsPerSecond) {
+    this(consumer, maxRecordsPerSecond, null);
+  }
+
+  /**
+   * @param transactionIds sequence of the id range this generator counts up from, so that parallel
+   *     generators never produce the same transaction id; null for random ids
+   */
+  public TransactionsGenerator(
+      Consumer<Transaction> consumer, int maxRecordsPerSecond, AtomicLong transactionIds) {
     this.consumer = consumer;
     this.maxRecordsPerSecond = maxRecordsPerSecond;
     this.throttler = new Throttler(maxRecordsPerSecond);
+    this.transactionIds = transactionIds;
   }
 
   public void adjustMaxRecordsPerSecond(long maxRecordsPerSecond) {
@@ -50,7 +63,8 @@ public class TransactionsGenerator implements Runnable {
   }
 
   protected Transaction randomEvent(SplittableRandom rnd) {
-    long transactionId = rnd.nextLong(Long.MAX_VALUE);
+    long transactionId =
+        transactionIds == null ? rnd.nextLong(Long.MAX_VALUE) : transactionIds.getAndIncrement();
     long payeeId = rnd.nextLong(MAX_PAYEE_ID);
     long beneficiaryId = rnd.nextLong(MAX_BENEFICIARY_ID);
     double paymentAmountDouble =
@@ -86,8 +100,6 @@ public class TransactionsGenerator implements Runnable {
 
   @Override
   public final void run() {
-    running = true;
-
     final SplittableRandom rnd = new SplittableRandom();
 
     while (running) {
@@ -97,7 +109,8 @@ public class TransactionsGenerator implements Runnable {
       try {
         throttler.throttle();
       } catch (InterruptedException e) {
-        throw new RuntimeException(e);
+        Thread.currentThread().interrupt();
+        break;
       }
     }
     log.info("Finished run()");
@@ -0,0 +1,42 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ververica.demo.backend.model;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/** Estimated state a rule would keep in Flink, extrapolated from recently seen transactions. */
+@Data
+@AllArgsConstructor
+public class RuleCostEstimate {
+  private Verdict verdict;
+  private int sampledTransactions;
+  private double ratePerSecond;
+  private long eventsInWindow;
+  private long keys;
+  private long stateBytes;
+  private List<String> messages;
+
+  public enum Verdict {
+    OK,
+    WARN,
+    REJECT,
+    UNKNOWN
+  }
+}
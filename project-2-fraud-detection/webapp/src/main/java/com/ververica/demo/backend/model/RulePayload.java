@@ -40,6 +40,7 @@ public class RulePayload {
   private BigDecimal limit;
   private Integer windowMinutes;
   private ControlType controlType;
+  private List<RulePayload> rules; // complete rule set, SNAPSHOT only
 
   /**
    * Evaluates this rule by comparing provided value with rules' limit based on limit operator type.
@@ -100,7 +101,8 @@ public class RulePayload {
     ACTIVE,
     PAUSE,
     DELETE,
-    CONTROL
+    CONTROL,
+    SNAPSHOT
   }
 
   public enum ControlType {
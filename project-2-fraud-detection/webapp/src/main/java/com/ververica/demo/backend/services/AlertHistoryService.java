@@ -0,0 +1,288 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ververica.demo.backend.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ververica.demo.backend.model.AlertHistoryPage;
+import com.ververica.demo.backend.model.StoredAlert;
+import com.zaxxer.hikari.HikariDataSource;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Keeps the history of alerts received from Flink in two tiers:
+ *
+ * <ul>
+ *   <li>a ring buffer with the latest {@code memory-capacity} alerts, which answers most queries
+ *       without touching the disk;
+ *   <li>an H2 file database, separate from the rules database, with the latest {@code max-rows}
+ *       alerts indexed by rule id, key and time. Alerts are written in batches by a timer, so the
+ *       Kafka listener never waits for the disk. Alerts that do not fit into the write queue are
+ *       counted and logged, they are only kept until the ring buffer overwrites them.
+ * </ul>
+ *
+ * <p>Alert ids are assigned in arrival order and pages are addressed by id ({@code beforeId})
+ * rather than by offset, so that every page is a single index range scan regardless of its depth.
+ */
+@Service
+@Slf4j
+public class AlertHistoryService {
+
+  private static final String INSERT =
+      "INSERT INTO alerts (id, rule_id, alert_key, alert_time, payload) VALUES (?, ?, ?, ?, ?)";
+
+  // ring slots copied per lock acquisition while scanning, so that add() is never held up long
+  private static final int SCAN_CHUNK = 1024;
+
+  private static final RowMapper<StoredAlert> ROW_MAPPER =
+      (rs, rowNum) ->
+          new StoredAlert(
+              rs.getLong("id"),
+              (Integer) rs.getObject("rule_id"),
+              rs.getString("alert_key"),
+              rs.getLong("alert_time"),
+              rs.getString("payload"));
+
+  private final ObjectMapper mapper = new ObjectMapper();
+  private final HikariDataSource dataSource;
+  private final JdbcTemplate jdbcTemplate;
+  private final int maxRows;
+
+  private final StoredAlert[] recent;
+  private final long firstId;
+  private long nextId; // guarded by recent
+
+  private final BlockingQueue<StoredAlert> pendingWrites;
+  private final LongAdder droppedWrites = new LongAdder();
+  private long reportedDroppedWrites; // guarded by pendingWrites
+
+  @Autowired
+  public AlertHistoryService(
+      @Value("${alerts.history.url}") String url,
+      @Value("${alerts.history.memory-capacity}") int memoryCapacity,
+      @Value("${alerts.history.pending-capacity}") int pendingCapacity,
+      @Value("${alerts.history.max-rows}") int maxRows) {
+    this.dataSource =
+        DataSourceBuilder.create().type(HikariDataSource.class).url(url).username("sa").build();
+    this.jdbcTemplate = new JdbcTemplate(dataSource);
+    this.maxRows = maxRows;
+    this.recent = new StoredAlert[memoryCapacity];
+    this.pendingWrites = new ArrayBlockingQueue<>(pendingCapacity);
+
+    createSchema();
+    Long maxId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM alerts", Long.class);
+    this.firstId = maxId == null ? 1 : maxId + 1;
+    this.nextId = firstId;
+  }
+
+  private void createSchema() {
+    jdbcTemplate.execute(
+        "CREATE TABLE IF NOT EXISTS alerts ("
+            + "id BIGINT PRIMARY KEY, "
+            + "rule_id INT, "
+            + "alert_key VARCHAR(1024), "
+            + "alert_time BIGINT NOT NULL, "
+            + "payload CLOB)");
+    jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS alerts_rule ON alerts (rule_id, id)");
+    jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS alerts_key ON alerts (alert_key, id)");
+    jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS alerts_time ON alerts (alert_time)");
+  }
+
+  /** @return the stored alert, or null if the message could not be parsed */
+  public StoredAlert add(String message) {
+    JsonNode node;
+    try {
+      node = mapper.readTree(message);
+    } catch (IOException e) {
+      log.warn("Failed parsing alert {}, not storing it", message, e);
+      return null;
+    }
+    JsonNode ruleId = node.path("ruleId");
+    JsonNode key = node.path("key");
+    JsonNode eventTime = node.path("triggeringEvent").path("eventTime");
+
+    StoredAlert alert;
+    synchronized (recent) {
+      alert =
+          new StoredAlert(
+              nextId,
+              ruleId.isNumber() ? ruleId.intValue() : null,
+              key.isTextual() ? key.textValue() : null,
+              eventTime.isNumber() ? eventTime.longValue() : System.currentTimeMillis(),
+              message);
+      recent[slot(nextId)] = alert;
+      nextId++;
+    }
+    if (!pendingWrites.offer(alert)) {
+      droppedWrites.increment();
+      log.debug("Alert history write queue full, alert {} is not persisted", alert.getId());
+    }
+    return alert;
+  }
+
+  /**
+   * Returns up to {@code limit} alerts older than {@code beforeId} (all alerts if null) matching
+   * the given filters, newest first. Null filters match everything, {@code to} is exclusive.
+   */
+  public AlertHistoryPage query(
+      Integer ruleId, String key, Long from, Long to, Long beforeId, int limit) {
+    long before = beforeId == null ? Long.MAX_VALUE : beforeId;
+    List<StoredAlert> result = new ArrayList<>(limit);
+
+    // the ring is copied in chunks and filtered outside the lock, the id is the next one to copy
+    long id;
+    synchronized (recent) {
+      id = Math.min(nextId, before) - 1;
+    }
+    StoredAlert[] chunk = new StoredAlert[SCAN_CHUNK];
+    while (result.size() < limit) {
+      int copied = 0;
+      synchronized (recent) {
+        long oldestInMemory = Math.max(firstId, nextId - recent.length);
+        while (copied < chunk.length && id - copied >= oldestInMemory) {
+          chunk[copied] = recent[slot(id - copied)];
+          copied++;
+        }
+      }
+      if (copied == 0) {
+        break;
+      }
+      for (int i = 0; i < copied && result.size() < limit; i++) {
+        if (matches(chunk[i], ruleId, key, from, to)) {
+          result.add(chunk[i]);
+        }
+      }
+      id -= copied;
+    }
+    if (result.size() < limit) {
+      result.addAll(queryDisk(ruleId, key, from, to, id + 1, limit - result.size()));
+    }
+
+    Long nextBeforeId = result.size() < limit ? null : result.get(result.size() - 1).getId();
+    return new AlertHistoryPage(result, nextBeforeId);
+  }
+
+  private List<StoredAlert> queryDisk(
+      Integer ruleId, String key, Long from, Long to, long before, int limit) {
+    StringBuilder sql =
+        new StringBuilder(
+            "SELECT id, rule_id, alert_key, alert_time, payload FROM alerts WHERE id < ?");
+    List<Object> args = new ArrayList<>();
+    args.add(before);
+    if (ruleId != null) {
+      sql.append(" AND rule_id = ?");
+      args.add(ruleId);
+    }
+    if (key != null) {
+      sql.append(" AND alert_key = ?");
+      args.add(key);
+    }
+    if (from != null) {
+      sql.append(" AND alert_time >= ?");
+      args.add(from);
+    }
+    if (to != null) {
+      sql.append(" AND alert_time < ?");
+      args.add(to);
+    }
+    sql.append(" ORDER BY id DESC LIMIT ?");
+    args.add(limit);
+    return jdbcTemplate.query(sql.toString(), ROW_MAPPER, args.toArray());
+  }
+
+  private static boolean matches(
+      StoredAlert alert, Integer ruleId, String key, Long from, Long to) {
+    return (ruleId == null || ruleId.equals(alert.getRuleId()))
+        && (key == null || key.equals(alert.getKey()))
+        && (from == null || alert.getTime() >= from)
+        && (to == null || alert.getTime() < to);
+  }
+
+  private int slot(long id) {
+    return (int) (id % recent.length);
+  }
+
+  @Scheduled(fixedDelayString = "${alerts.history.flush-interval-ms}")
+  public void flush() {
+    reportDroppedWrites();
+    List<StoredAlert> batch = new ArrayList<>();
+    while (pendingWrites.drainTo(batch, 10_000) > 0) {
+      jdbcTemplate.batchUpdate(
+          INSERT,
+          batch,
+          batch.size(),
+          (ps, alert) -> {
+            ps.setLong(1, alert.getId());
+            ps.setObject(2, alert.getRuleId());
+            ps.setString(3, alert.getKey());
+            ps.setLong(4, alert.getTime());
+            ps.setString(5, alert.getAlert());
+          });
+      batch.clear();
+    }
+  }
+
+  @Scheduled(fixedDelay = 60_000)
+  public void prune() {
+    long threshold;
+    synchronized (recent) {
+      threshold = nextId - maxRows;
+    }
+    if (threshold > 0) {
+      int deleted = jdbcTemplate.update("DELETE FROM alerts WHERE id < ?", threshold);
+      log.debug("Pruned {} alerts from the history", deleted);
+    }
+  }
+
+  private void reportDroppedWrites() {
+    synchronized (pendingWrites) {
+      long dropped = droppedWrites.sum();
+      if (dropped > reportedDroppedWrites) {
+        log.warn(
+            "Alert history write queue full, {} alerts not persisted ({} in total)",
+            dropped - reportedDroppedWrites,
+            dropped);
+        reportedDroppedWrites = dropped;
+      }
+    }
+  }
+
+  public long getDroppedWrites() {
+    return droppedWrites.sum();
+  }
+
+  @PreDestroy
+  public void close() {
+    flush();
+    dataSource.close();
+  }
+}
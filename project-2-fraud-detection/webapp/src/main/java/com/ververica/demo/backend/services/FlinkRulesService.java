@@ -22,6 +22,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ververica.demo.backend.entities.Rule;
 import com.ververica.demo.backend.model.RulePayload;
 import com.ververica.demo.backend.model.RulePayload.RuleState;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -54,4 +57,20 @@ public class FlinkRulesService {
     String payloadJson = mapper.writeValueAsString(payload);
     kafkaTemplate.send(topic, payloadJson);
   }
+
+  /**
+   * Replaces the complete rule set in Flink with the given rules in a single message, instead of
+   * one add or delete message per rule. An empty list removes all rules.
+   */
+  public void replaceRules(List<Rule> rules) throws IOException {
+    List<RulePayload> payloads = new ArrayList<>(rules.size());
+    for (Rule rule : rules) {
+      payloads.add(mapper.readValue(rule.getRulePayload(), RulePayload.class));
+    }
+    RulePayload snapshot = new RulePayload();
+    snapshot.setRuleState(RuleState.SNAPSHOT);
+    snapshot.setRules(payloads);
+    String payloadJson = mapper.writeValueAsString(snapshot);
+    kafkaTemplate.send(topic, payloadJson);
+  }
 }
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ververica.demo.backend.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+/**
+ * Collects JSON messages for a single WebSocket destination and sends them as one JSON array frame.
+ * A frame is sent as soon as {@code maxBatchSize} messages are pending or when {@link #flush()} is
+ * called by the owner's timer, whichever comes first. Messages arriving while {@code
+ * queueCapacity} messages are already pending are dropped.
+ *
+ * <p>Messages are expected to be valid JSON already and are concatenated as-is, without being
+ * parsed again.
+ */
+@Slf4j
+public class JsonArrayBatcher {
+
+  private final SimpMessagingTemplate simpTemplate;
+  private final String destination;
+  private final int maxBatchSize;
+  private final BlockingQueue<String> pending;
+
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+
+  public JsonArrayBatcher(
+      SimpMessagingTemplate simpTemplate,
+      String destination,
+      int maxBatchSize,
+      int queueCapacity) {
+    this.simpTemplate = simpTemplate;
+    this.destination = destination;
+    this.maxBatchSize = maxBatchSize;
+    this.pending = new ArrayBlockingQueue<>(queueCapacity);
+  }
+
+  public void add(String message) {
+    if (!pending.offer(message)) {
+      dropped.increment();
+      log.debug("Dropped message for {}, {} messages pending", destination, pending.size());
+      return;
+    }
+    if (pending.size() >= maxBatchSize) {
+      flush();
+    }
+  }
+
+  public synchronized void flush() {
+    List<String> batch = new ArrayList<>(maxBatchSize);
+    while (pending.drainTo(batch, maxBatchSize) > 0) {
+      StringBuilder frame = new StringBuilder(batch.size() * 256).append('[');
+      for (int i = 0; i < batch.size(); i++) {
+        if (i > 0) {
+          frame.append(',');
+        }
+        frame.append(batch.get(i));
+      }
+      simpTemplate.convertAndSend(destination, frame.append(']').toString());
+      sent.add(batch.size());
+      if (batch.size() < maxBatchSize) {
+        return;
+      }
+      batch.clear();
+    }
+  }
+
+  public long getSent() {
+    return sent.sum();
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+}
@@ -21,6 +21,7 @@ import com.ververica.demo.backend.model.Alert;
 import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
@@ -35,8 +36,9 @@ public class KafkaAlertsPusher implements Consumer<Alert> {
   private String topic;
 
   @Autowired
-  public KafkaAlertsPusher(KafkaTemplate<String, Object> kafkaTemplateForJson) {
-    this.kafkaTemplate = kafkaTemplateForJson;
+  public KafkaAlertsPusher(
+      @Qualifier("kafkaTemplateForJson") KafkaTemplate<String, Object> kafkaTemplate) {
+    this.kafkaTemplate = kafkaTemplate;
   }
 
   @Override
@@ -20,6 +20,7 @@ package com.ververica.demo.backend.services;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ververica.demo.backend.entities.Rule;
 import com.ververica.demo.backend.model.RulePayload;
+import com.ververica.demo.backend.model.StoredAlert;
 import com.ververica.demo.backend.repositories.RuleRepository;
 import java.io.IOException;
 import java.util.Optional;
@@ -29,38 +30,60 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 @Service
 @Slf4j
 public class KafkaConsumerService {
 
-  private final SimpMessagingTemplate simpTemplate;
   private final RuleRepository ruleRepository;
   private final ObjectMapper mapper = new ObjectMapper();
 
-  @Value("${web-socket.topic.alerts}")
-  private String alertsWebSocketTopic;
-
-  @Value("${web-socket.topic.latency}")
-  private String latencyWebSocketTopic;
+  private final JsonArrayBatcher alertsBatcher;
+  private final JsonArrayBatcher latencyBatcher;
+  private final AlertHistoryService alertHistory;
+  private final LiveStreamService liveStreams;
 
   @Autowired
-  public KafkaConsumerService(SimpMessagingTemplate simpTemplate, RuleRepository ruleRepository) {
-    this.simpTemplate = simpTemplate;
+  public KafkaConsumerService(
+      SimpMessagingTemplate simpTemplate,
+      RuleRepository ruleRepository,
+      AlertHistoryService alertHistory,
+      LiveStreamService liveStreams,
+      @Value("${web-socket.topic.alerts}") String alertsWebSocketTopic,
+      @Value("${web-socket.topic.latency}") String latencyWebSocketTopic,
+      @Value("${web-socket.batch.max-size}") int batchMaxSize,
+      @Value("${web-socket.batch.queue-capacity}") int batchQueueCapacity) {
     this.ruleRepository = ruleRepository;
+    this.alertHistory = alertHistory;
+    this.liveStreams = liveStreams;
+    this.alertsBatcher =
+        new JsonArrayBatcher(simpTemplate, alertsWebSocketTopic, batchMaxSize, batchQueueCapacity);
+    this.latencyBatcher =
+        new JsonArrayBatcher(simpTemplate, latencyWebSocketTopic, batchMaxSize, batchQueueCapacity);
   }
 
   @KafkaListener(topics = "${kafka.topic.alerts}", groupId = "alerts")
   public void templateAlerts(@Payload String message) {
     log.debug("{}", message);
-    simpTemplate.convertAndSend(alertsWebSocketTopic, message);
+    StoredAlert alert = alertHistory.add(message);
+    if (alert != null) {
+      liveStreams.publishAlert(alert.getRuleId(), alert.getKey(), message);
+    }
+    alertsBatcher.add(message);
   }
 
   @KafkaListener(topics = "${kafka.topic.latency}", groupId = "latency")
   public void templateLatency(@Payload String message) {
     log.debug("{}", message);
-    simpTemplate.convertAndSend(latencyWebSocketTopic, message);
+    latencyBatcher.add(message);
+  }
+
+  @Scheduled(fixedRateString = "${web-socket.batch.interval-ms}")
+  public void flushBatches() {
+    alertsBatcher.flush();
+    latencyBatcher.flush();
   }
 
   @KafkaListener(topics = "${kafka.topic.current-rules}", groupId = "current-rules")
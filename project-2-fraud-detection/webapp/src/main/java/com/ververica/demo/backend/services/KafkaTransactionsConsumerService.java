@@ -17,8 +17,16 @@
 
 package com.ververica.demo.backend.services;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.ververica.demo.backend.model.TransactionsFrame;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.common.TopicPartition;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,21 +35,47 @@ import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.listener.ConsumerSeekAware;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+/**
+ * Forwards live transactions to the UI. The listener keeps consuming at whatever rate the generator
+ * produces, but only a uniform (reservoir) sample of at most {@code sample-size} transactions per
+ * frame is pushed to the WebSocket, together with exact counts and amounts, once every {@code
+ * frame-interval-ms}.
+ */
 @Service
 @Slf4j
 public class KafkaTransactionsConsumerService implements ConsumerSeekAware {
 
   private final SimpMessagingTemplate simpTemplate;
+  private final LiveStreamService liveStreams;
+  private final RuleCostEstimator costEstimator;
   private final ObjectMapper mapper = new ObjectMapper();
 
   @Value("${web-socket.topic.transactions}")
   private String transactionsWebSocketTopic;
 
+  private final Object lock = new Object();
+  private final JsonNode[] sample;
+  private long frameCount;
+  private BigDecimal frameAmount = BigDecimal.ZERO;
+  private long frameStart = System.nanoTime();
+  private boolean idle = true;
+
+  private long totalCount;
+  private BigDecimal totalAmount = BigDecimal.ZERO;
+
   @Autowired
-  public KafkaTransactionsConsumerService(SimpMessagingTemplate simpTemplate) {
+  public KafkaTransactionsConsumerService(
+      SimpMessagingTemplate simpTemplate,
+      LiveStreamService liveStreams,
+      RuleCostEstimator costEstimator,
+      @Value("${web-socket.transactions.sample-size}") int sampleSize) {
     this.simpTemplate = simpTemplate;
+    this.liveStreams = liveStreams;
+    this.costEstimator = costEstimator;
+    this.sample = new JsonNode[sampleSize];
   }
 
   @KafkaListener(
@@ -50,7 +84,72 @@ public class KafkaTransactionsConsumerService implements ConsumerSeekAware {
       groupId = "transactions")
   public void consumeTransactions(@Payload String message) {
     log.debug("{}", message);
-    simpTemplate.convertAndSend(transactionsWebSocketTopic, message);
+    JsonNode transaction;
+    try {
+      transaction = mapper.readTree(message);
+    } catch (IOException e) {
+      log.warn("Failed parsing transaction {}", message, e);
+      return;
+    }
+    JsonNode amountNode = transaction.get("paymentAmount");
+    BigDecimal amount = amountNode == null ? BigDecimal.ZERO : amountNode.decimalValue();
+    long payeeId = transaction.path("payeeId").asLong();
+    long beneficiaryId = transaction.path("beneficiaryId").asLong();
+    liveStreams.publishTransaction(payeeId, beneficiaryId, message);
+    costEstimator.record(
+        transaction.path("transactionId").asLong(),
+        transaction.path("eventTime").asLong(),
+        payeeId,
+        beneficiaryId,
+        amount,
+        transaction.path("paymentType").asText(null));
+
+    synchronized (lock) {
+      if (frameCount < sample.length) {
+        sample[(int) frameCount] = transaction;
+      } else {
+        long slot = ThreadLocalRandom.current().nextLong(frameCount + 1);
+        if (slot < sample.length) {
+          sample[(int) slot] = transaction;
+        }
+      }
+      frameCount++;
+      frameAmount = frameAmount.add(amount);
+    }
+  }
+
+  @Scheduled(fixedRateString = "${web-socket.transactions.frame-interval-ms}")
+  public void publishFrame() {
+    TransactionsFrame frame;
+    synchronized (lock) {
+      long now = System.nanoTime();
+      if (frameCount == 0 && idle) {
+        frameStart = now;
+        return;
+      }
+      // one empty frame is sent when the stream stops, so that the UI shows a zero rate
+      idle = frameCount == 0;
+      int sampled = (int) Math.min(frameCount, sample.length);
+      List<JsonNode> transactions = new ArrayList<>(Arrays.asList(sample).subList(0, sampled));
+      Arrays.fill(sample, null);
+
+      double seconds = Math.max(now - frameStart, 1) / 1_000_000_000d;
+      totalCount += frameCount;
+      totalAmount = totalAmount.add(frameAmount);
+      frame =
+          new TransactionsFrame(
+              transactions,
+              frameCount,
+              frameAmount,
+              frameCount / seconds,
+              totalCount,
+              totalAmount);
+
+      frameCount = 0;
+      frameAmount = BigDecimal.ZERO;
+      frameStart = now;
+    }
+    simpTemplate.convertAndSend(transactionsWebSocketTopic, frame);
   }
 
   @Override
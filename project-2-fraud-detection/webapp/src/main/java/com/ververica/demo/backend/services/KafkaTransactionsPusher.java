@@ -18,36 +18,88 @@
 package com.ververica.demo.backend.services;
 
 import com.ververica.demo.backend.datasource.Transaction;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+/**
+ * Publishes generated transactions asynchronously. At most {@code max-in-flight} records are
+ * unacknowledged at any time, further calls block the generator threads until Kafka catches up.
+ * An interrupted generator thread gives up waiting and its transaction is not sent.
+ */
 @Service
 @Slf4j
 public class KafkaTransactionsPusher implements Consumer<Transaction> {
 
   private KafkaTemplate<String, Object> kafkaTemplate;
-  private Transaction lastTransaction;
+  private volatile Transaction lastTransaction;
+
+  private final Semaphore inFlight;
+  private final int maxInFlight;
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder failed = new LongAdder();
 
   @Value("${kafka.topic.transactions}")
   private String topic;
 
   @Autowired
-  public KafkaTransactionsPusher(KafkaTemplate<String, Object> kafkaTemplateForJson) {
-    this.kafkaTemplate = kafkaTemplateForJson;
+  public KafkaTransactionsPusher(
+      @Qualifier("kafkaTemplateForTransactions") KafkaTemplate<String, Object> kafkaTemplate,
+      @Value("${kafka.producer.transactions.max-in-flight}") int maxInFlight) {
+    this.kafkaTemplate = kafkaTemplate;
+    this.maxInFlight = maxInFlight;
+    this.inFlight = new Semaphore(maxInFlight);
   }
 
   @Override
   public void accept(Transaction transaction) {
     lastTransaction = transaction;
     log.debug("{}", transaction);
-    kafkaTemplate.send(topic, transaction);
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    try {
+      kafkaTemplate
+          .send(topic, transaction)
+          .addCallback(
+              result -> {
+                inFlight.release();
+                sent.increment();
+              },
+              ex -> {
+                inFlight.release();
+                failed.increment();
+                log.debug("Failed sending {}", transaction, ex);
+              });
+    } catch (RuntimeException e) {
+      inFlight.release();
+      failed.increment();
+      throw e;
+    }
   }
 
   public Transaction getLastTransaction() {
     return lastTransaction;
   }
+
+  public long getSent() {
+    return sent.sum();
+  }
+
+  public long getFailed() {
+    return failed.sum();
+  }
+
+  public int getInFlight() {
+    return maxInFlight - inFlight.availablePermits();
+  }
 }
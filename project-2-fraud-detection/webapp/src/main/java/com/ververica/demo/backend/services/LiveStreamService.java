@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ververica.demo.backend.services;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+/**
+ * Server-sent event streams of alerts and transactions, filtered on the server.
+ *
+ * <p>Kafka listeners only offer matching messages to the bounded buffer of each subscriber and
+ * never block: when a buffer is full the message is dropped for that subscriber alone. Buffers
+ * are drained by sender threads, at most one per subscriber, and sent as a single event holding a
+ * JSON array. {@code sender-threads} threads are kept, more are started while slow clients hold
+ * theirs, so a slow client only ever holds up its own sender. A subscriber whose send takes longer
+ * than {@code send-timeout-ms} is dropped.
+ */
+@Service
+@Slf4j
+public class LiveStreamService {
+
+  private final List<Subscription> alertSubscriptions = new CopyOnWriteArrayList<>();
+  private final List<Subscription> transactionSubscriptions = new CopyOnWriteArrayList<>();
+  private final ThreadPoolExecutor senders;
+  private final AtomicInteger subscribers = new AtomicInteger();
+
+  private final int bufferSize;
+  private final int maxSubscribers;
+  private final long timeout;
+  private final long sendTimeoutNanos;
+
+  @Autowired
+  public LiveStreamService(
+      @Value("${streams.buffer-size}") int bufferSize,
+      @Value("${streams.max-subscribers}") int maxSubscribers,
+      @Value("${streams.timeout-ms}") long timeout,
+      @Value("${streams.send-timeout-ms}") long sendTimeout,
+      @Value("${streams.sender-threads}") int senderThreads) {
+    this.bufferSize = bufferSize;
+    this.maxSubscribers = maxSubscribers;
+    this.timeout = timeout;
+    this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeout);
+    // no queue: a drain either gets an idle thread or a new one
+    this.senders =
+        new ThreadPoolExecutor(
+            senderThreads,
+            Math.max(senderThreads, 2 * maxSubscribers),
+            60,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>());
+  }
+
+  /** @param ruleId only alerts of this rule, all if null */
+  public SseEmitter subscribeToAlerts(Integer ruleId, String key) {
+    return subscribe(alertSubscriptions, new Subscription(ruleId, key, null, null));
+  }
+
+  public SseEmitter subscribeToTransactions(Long payeeId, Long beneficiaryId) {
+    return subscribe(
+        transactionSubscriptions, new Subscription(null, null, payeeId, beneficiaryId));
+  }
+
+  private SseEmitter subscribe(List<Subscription> subscriptions, Subscription subscription) {
+    if (subscribers.incrementAndGet() > maxSubscribers) {
+      subscribers.decrementAndGet();
+      throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many subscribers");
+    }
+    SseEmitter emitter = new SseEmitter(timeout);
+    subscription.emitter = emitter;
+    Runnable remove = () -> remove(subscriptions, subscription);
+    emitter.onCompletion(remove);
+    emitter.onTimeout(remove);
+    emitter.onError(e -> remove.run());
+    subscriptions.add(subscription);
+    return emitter;
+  }
+
+  /** @return whether the subscription was still registered */
+  private boolean remove(List<Subscription> subscriptions, Subscription subscription) {
+    if (!subscription.removed.compareAndSet(false, true)) {
+      return false;
+    }
+    subscriptions.remove(subscription);
+    subscribers.decrementAndGet();
+    return true;
+  }
+
+  public void publishAlert(Integer ruleId, String key, String message) {
+    for (Subscription subscription : alertSubscriptions) {
+      if (subscription.matchesAlert(ruleId, key)) {
+        subscription.offer(message);
+      }
+    }
+  }
+
+  public void publishTransaction(long payeeId, long beneficiaryId, String message) {
+    for (Subscription subscription : transactionSubscriptions) {
+      if (subscription.matchesTransaction(payeeId, beneficiaryId)) {
+        subscription.offer(message);
+      }
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${streams.flush-interval-ms}")
+  public void flush() {
+    flush(alertSubscriptions, "alerts");
+    flush(transactionSubscriptions, "transactions");
+  }
+
+  private void flush(List<Subscription> subscriptions, String eventName) {
+    long now = System.nanoTime();
+    for (Subscription subscription : subscriptions) {
+      long sendStarted = subscription.sendStarted;
+      if (sendStarted != 0 && now - sendStarted > sendTimeoutNanos) {
+        dropSlowSubscriber(subscriptions, subscription, eventName);
+      } else if (!subscription.buffer.isEmpty()
+          && subscription.draining.compareAndSet(false, true)) {
+        try {
+          senders.execute(() -> drain(subscriptions, subscription, eventName));
+        } catch (RejectedExecutionException e) {
+          // all senders are stuck on slow clients, retried on the next flush
+          subscription.draining.set(false);
+        }
+      }
+    }
+  }
+
+  /**
+   * The sender stays blocked until the container gives up on the connection, the emitter is
+   * completed by the sender once the send returns.
+   */
+  private void dropSlowSubscriber(
+      List<Subscription> subscriptions, Subscription subscription, String eventName) {
+    if (remove(subscriptions, subscription)) {
+      log.info("Dropping {} subscriber, send blocked for more than the send timeout", eventName);
+      Thread sender = subscription.sender;
+      if (sender != null) {
+        sender.interrupt();
+      }
+    }
+  }
+
+  private void drain(
+      List<Subscription> subscriptions, Subscription subscription, String eventName) {
+    subscription.sender = Thread.currentThread();
+    try {
+      List<String> batch = new ArrayList<>(subscription.buffer.size());
+      subscription.buffer.drainTo(batch);
+      StringBuilder data = new StringBuilder(batch.size() * 256).append('[');
+      for (int i = 0; i < batch.size(); i++) {
+        if (i > 0) {
+          data.append(',');
+        }
+        data.append(batch.get(i));
+      }
+      subscription.sendStarted = System.nanoTime();
+      subscription.emitter.send(
+          SseEmitter.event()
+              .name(eventName)
+              .data(data.append(']').toString(), MediaType.APPLICATION_JSON));
+      if (subscription.removed.get()) {
+        // dropped while the send was blocked
+        subscription.emitter.complete();
+      }
+    } catch (IOException | RuntimeException e) {
+      log.debug("Closing {} stream after failed send", eventName, e);
+      remove(subscriptions, subscription);
+      subscription.emitter.completeWithError(e);
+    } finally {
+      subscription.sendStarted = 0;
+      subscription.sender = null;
+      subscription.draining.set(false);
+    }
+  }
+
+  public int getSubscribers() {
+    return subscribers.get();
+  }
+
+  public long getDropped() {
+    long dropped = 0;
+    for (Subscription subscription : alertSubscriptions) {
+      dropped += subscription.dropped.sum();
+    }
+    for (Subscription subscription : transactionSubscriptions) {
+      dropped += subscription.dropped.sum();
+    }
+    return dropped;
+  }
+
+  @PreDestroy
+  public void close() {
+    senders.shutdownNow();
+    alertSubscriptions.forEach(subscription -> subscription.emitter.complete());
+    transactionSubscriptions.forEach(subscription -> subscription.emitter.complete());
+  }
+
+  private class Subscription {
+    private final Integer ruleId;
+    private final String key;
+    private final Long payeeId;
+    private final Long beneficiaryId;
+
+    private final BlockingQueue<String> buffer = new ArrayBlockingQueue<>(bufferSize);
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean removed = new AtomicBoolean();
+    private volatile long sendStarted; // 0 while no send is in progress
+    private volatile Thread sender;
+    private final LongAdder dropped = new LongAdder();
+    private SseEmitter emitter;
+
+    private Subscription(Integer ruleId, String key, Long payeeId, Long beneficiaryId) {
+      this.ruleId = ruleId;
+      this.key = key;
+      this.payeeId = payeeId;
+      this.beneficiaryId = beneficiaryId;
+    }
+
+    private boolean matchesAlert(Integer alertRuleId, String alertKey) {
+      return (ruleId == null || ruleId.equals(alertRuleId))
+          && (key == null || key.equals(alertKey));
+    }
+
+    private boolean matchesTransaction(long transactionPayeeId, long transactionBeneficiaryId) {
+      return (payeeId == null || payeeId == transactionPayeeId)
+          && (beneficiaryId == null || beneficiaryId == transactionBeneficiaryId);
+    }
+
+    private void offer(String message) {
+      if (!buffer.offer(message)) {
+        dropped.increment();
+      }
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ververica.demo.backend.services;
+
+import com.ververica.demo.backend.model.RuleCostEstimate;
+import com.ververica.demo.backend.model.RuleCostEstimate.Verdict;
+import com.ververica.demo.backend.model.RulePayload;
+import com.ververica.demo.backend.model.RulePayload.RuleState;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Estimates what a rule would cost in Flink before it is deployed, from the latest {@code
+ * sample-size} transactions consumed by the webapp.
+ *
+ * <p>{@code DynamicAlertFunction} keeps every transaction of the rule's window in keyed state, so
+ * the retained events are the transaction rate times the window. The number of keys is counted
+ * directly when the window fits in the sample; otherwise the key population is estimated from
+ * the sample with the Chao1 estimator and the expected number of distinct keys among the window's
+ * events is derived from it, assuming keys are drawn uniformly from that population.
+ */
+@Service
+public class RuleCostEstimator {
+
+  private final long[] transactionIds;
+  private final long[] eventTimes;
+  private final long[] payeeIds;
+  private final long[] beneficiaryIds;
+  private final BigDecimal[] paymentAmounts;
+  private final String[] paymentTypes;
+  private int next;
+  private int size;
+
+  private final long bytesPerEvent;
+  private final long bytesPerKey;
+  private final long warnStateBytes;
+  private final long rejectStateBytes;
+
+  @Autowired
+  public RuleCostEstimator(
+      @Value("${rules.cost.sample-size}") int sampleSize,
+      @Value("${rules.cost.bytes-per-event}") long bytesPerEvent,
+      @Value("${rules.cost.bytes-per-key}") long bytesPerKey,
+      @Value("${rules.cost.warn-state-bytes}") long warnStateBytes,
+      @Value("${rules.cost.reject-state-bytes}") long rejectStateBytes) {
+    this.transactionIds = new long[sampleSize];
+    this.eventTimes = new long[sampleSize];
+    this.payeeIds = new long[sampleSize];
+    this.beneficiaryIds = new long[sampleSize];
+    this.paymentAmounts = new BigDecimal[sampleSize];
+    this.paymentTypes = new String[sampleSize];
+    this.bytesPerEvent = bytesPerEvent;
+    this.bytesPerKey = bytesPerKey;
+    this.warnStateBytes = warnStateBytes;
+    this.rejectStateBytes = rejectStateBytes;
+  }
+
+  public synchronized void record(
+      long transactionId,
+      long eventTime,
+      long payeeId,
+      long beneficiaryId,
+      BigDecimal paymentAmount,
+      String paymentType) {
+    transactionIds[next] = transactionId;
+    eventTimes[next] = eventTime;
+    payeeIds[next] = payeeId;
+    beneficiaryIds[next] = beneficiaryId;
+    paymentAmounts[next] = paymentAmount;
+    paymentTypes[next] = paymentType;
+    next = (next + 1) % eventTimes.length;
+    size = Math.min(size + 1, eventTimes.length);
+  }
+
+  public RuleCostEstimate estimate(RulePayload rule) {
+    List<String> messages = new ArrayList<>();
+    if (rule.getRuleState() != RuleState.ACTIVE && rule.getRuleState() != RuleState.PAUSE) {
+      return new RuleCostEstimate(Verdict.OK, 0, 0, 0, 0, 0, messages);
+    }
+    if (rule.getWindowMinutes() == null || rule.getWindowMinutes() <= 0) {
+      messages.add("windowMinutes must be positive");
+      return new RuleCostEstimate(Verdict.REJECT, 0, 0, 0, 0, 0, messages);
+    }
+    List<String> keyNames =
+        rule.getGroupingKeyNames() == null ? Collections.emptyList() : rule.getGroupingKeyNames();
+    for (String keyName : keyNames) {
+      if (!isKnownField(keyName)) {
+        messages.add("Unknown grouping key " + keyName);
+        return new RuleCostEstimate(Verdict.REJECT, 0, 0, 0, 0, 0, messages);
+      }
+    }
+
+    // only the grouping key columns of the counted events are copied under the lock, so that
+    // record() is not held up while the keys are counted
+    int sampled;
+    double ratePerSecond;
+    long eventsInWindow;
+    int counted;
+    Object[] columns = new Object[keyNames.size()];
+    synchronized (this) {
+      sampled = size;
+      int newest = (next - 1 + eventTimes.length) % eventTimes.length;
+      int oldest = (next - size + eventTimes.length) % eventTimes.length;
+      long span = sampled < 2 ? 0 : eventTimes[newest] - eventTimes[oldest];
+      if (span <= 0) {
+        messages.add("Not enough recent transactions to estimate the cost of the rule");
+        return new RuleCostEstimate(Verdict.UNKNOWN, sampled, 0, 0, 0, 0, messages);
+      }
+      ratePerSecond = (sampled - 1) * 1000d / span;
+      eventsInWindow = (long) (ratePerSecond * rule.getWindowMinutes() * 60);
+
+      counted = (int) Math.max(1, Math.min(sampled, eventsInWindow));
+      int start = (next - counted + eventTimes.length) % eventTimes.length;
+      for (int i = 0; i < columns.length; i++) {
+        columns[i] = copyRange(getColumn(keyNames.get(i)), start, counted);
+      }
+    }
+
+    Map<String, Integer> keyCounts = new HashMap<>();
+    for (int i = 0; i < counted; i++) {
+      keyCounts.merge(getKey(columns, i), 1, Integer::sum);
+    }
+    long keys = estimateKeys(keyCounts, counted, eventsInWindow);
+
+    // computed in double so that absurd windows saturate instead of overflowing
+    long stateBytes =
+        (long) ((double) eventsInWindow * bytesPerEvent + (double) keys * bytesPerKey);
+    Verdict verdict = Verdict.OK;
+    if (stateBytes >= rejectStateBytes) {
+      verdict = Verdict.REJECT;
+      messages.add(
+          String.format(
+              "Estimated state of %,d bytes exceeds the limit of %,d bytes",
+              stateBytes, rejectStateBytes));
+    } else if (stateBytes >= warnStateBytes) {
+      verdict = Verdict.WARN;
+      messages.add(
+          String.format(
+              "Estimated state of %,d bytes exceeds the warning threshold of %,d bytes",
+              stateBytes, warnStateBytes));
+    }
+    return new RuleCostEstimate(
+        verdict, sampled, ratePerSecond, eventsInWindow, keys, stateBytes, messages);
+  }
+
+  private static long estimateKeys(Map<String, Integer> keyCounts, int counted, long events) {
+    long distinct = keyCounts.size();
+    if (events <= counted) {
+      return distinct;
+    }
+    long singletons = 0;
+    long doubletons = 0;
+    for (int count : keyCounts.values()) {
+      if (count == 1) {
+        singletons++;
+      } else if (count == 2) {
+        doubletons++;
+      }
+    }
+    if (singletons == counted) {
+      // every sampled key is unique, nothing to extrapolate from but the events themselves
+      return events;
+    }
+    double population =
+        doubletons > 0
+            ? distinct + singletons * (double) singletons / (2 * doubletons)
+            : distinct + singletons * (singletons - 1) / 2d;
+    return (long) Math.min(events, population * -Math.expm1(-events / population));
+  }
+
+  private static boolean isKnownField(String name) {
+    switch (name) {
+      case "transactionId":
+      case "eventTime":
+      case "payeeId":
+      case "beneficiaryId":
+      case "paymentAmount":
+      case "paymentType":
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private static String getKey(Object[] columns, int index) {
+    StringBuilder key = new StringBuilder();
+    for (Object column : columns) {
+      if (column instanceof long[]) {
+        key.append(((long[]) column)[index]);
+      } else {
+        key.append(((Object[]) column)[index]);
+      }
+      key.append(';');
+    }
+    return key.toString();
+  }
+
+  /** Copies {@code length} slots of a ring column starting at {@code start}, oldest first. */
+  private Object copyRange(Object column, int start, int length) {
+    Object copy = column instanceof long[] ? new long[length] : new Object[length];
+    int head = Math.min(length, eventTimes.length - start);
+    System.arraycopy(column, start, copy, 0, head);
+    System.arraycopy(column, 0, copy, head, length - head);
+    return copy;
+  }
+
+  private Object getColumn(String name) {
+    switch (name) {
+      case "transactionId":
+        return transactionIds;
+      case "eventTime":
+        return eventTimes;
+      case "payeeId":
+        return payeeIds;
+      case "beneficiaryId":
+        return beneficiaryIds;
+      case "paymentAmount":
+        return paymentAmounts;
+      case "paymentType":
+        return paymentTypes;
+      default:
+        throw new IllegalArgumentException("Unknown field " + name);
+    }
+  }
+}